@@ -1,6 +1,5 @@
 package BE;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class PlayList {
@@ -11,7 +10,10 @@ public class PlayList {
     private String creatorName = "Muck in PlayList BE";
     private int time;
     private int songAmount;
-    private ArrayList<Song> songList = new ArrayList<>();
+    // Inserting, moving and removing a song at a position take O(log n), see PlayQueue.
+    private final PlayQueue<Song> songList = new PlayQueue<>();
+    // The rule of a smart playlist in the search language, e.g. "genre:rock duration:<300", or null.
+    private String smartRule;
 
     public PlayList(int playListId, String title, String creatorName){
         this.creatorName = creatorName;
@@ -42,6 +44,22 @@ public class PlayList {
         return creatorName;
     }
 
+    public String getSmartRule() {
+        return smartRule;
+    }
+
+    public void setSmartRule(String smartRule) {
+        this.smartRule = smartRule;
+    }
+
+    /**
+     * A smart playlist holds the songs matching its rule, instead of songs added by hand.
+     * @return true if the playlist has a rule.
+     */
+    public boolean isSmart() {
+        return smartRule != null && !smartRule.isBlank();
+    }
+
     /**
      * Gets the time of each song and adds them all together.
      * @return The total time for all the songs in the playlist.
@@ -69,4 +87,39 @@ public class PlayList {
     public void removeSOP(Song song){
         songList.remove(song);
     }
+
+    /**
+     * Removes a song at the place of an entry, so the right copy is removed if the song is in the playlist more than once.
+     * @param entry The place of the song.
+     */
+    public void removeSOP(PlayQueue.Entry<Song> entry){
+        songList.removeEntry(entry);
+    }
+
+    /**
+     * Gets the place of the song at a position, which stays the same when songs are moved or removed.
+     * @param index The position of the song.
+     * @return The entry of the song.
+     */
+    public PlayQueue.Entry<Song> getEntry(int index){
+        return songList.entryAt(index);
+    }
+
+    /**
+     * Finds the current position of a song by its place in the playlist.
+     * @param entry The place of the song.
+     * @return The position, or -1 if the song has been removed from the playlist.
+     */
+    public int indexOf(PlayQueue.Entry<Song> entry){
+        return songList.indexOfEntry(entry);
+    }
+
+    /**
+     * Moves a song to another position in O(log n).
+     * @param fromIndex The current index of the song.
+     * @param toIndex The index the song should end up at.
+     */
+    public void moveSong(int fromIndex, int toIndex){
+        songList.move(fromIndex, toIndex);
+    }
 }
@@ -0,0 +1,332 @@
+package BE;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An ordered list of songs to play, like a playlist or the Up Next queue,
+ * where inserting, moving and removing at a position take O(log n) instead of shifting the songs after it.
+ * <p>
+ * Each place in the list is an Entry with its own identity, so the same song can be in the list more than once
+ * and each copy can still be told apart. The position of an entry is found in O(log n) with indexOfEntry,
+ * also after the songs before it have been moved or removed.
+ * <p>
+ * The entries are kept in a treap: a binary tree ordered by position, balanced by random priorities,
+ * where every entry knows the size of its subtree and its parent.
+ * @param <T> The type of the values, e.g. Song.
+ */
+public class PlayQueue<T> extends AbstractList<T> {
+
+    /**
+     * A place in the list, holding a value. It keeps its identity when it is moved.
+     */
+    public static class Entry<T> {
+        private T value;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private int size = 1;
+        private Entry<T> left;
+        private Entry<T> right;
+        private Entry<T> parent;
+        // The list the entry is in, or null once it has been removed.
+        private PlayQueue<T> queue;
+
+        private Entry(T value) {
+            this.value = value;
+        }
+
+        public T getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * The two parts of a split tree.
+     */
+    private static class Halves<T> {
+        private Entry<T> first;
+        private Entry<T> rest;
+    }
+
+    private Entry<T> root;
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public T get(int index) {
+        return entryAt(index).value;
+    }
+
+    @Override
+    public T set(int index, T value) {
+        Entry<T> entry = entryAt(index);
+        T oldValue = entry.value;
+        entry.value = value;
+        return oldValue;
+    }
+
+    @Override
+    public void add(int index, T value) {
+        insert(index, value);
+    }
+
+    @Override
+    public T remove(int index) {
+        Entry<T> entry = detach(index);
+        return entry.value;
+    }
+
+    @Override
+    public void clear() {
+        for (Entry<T> entry = first(root); entry != null; entry = next(entry)) {
+            entry.queue = null;
+        }
+        root = null;
+        modCount++;
+    }
+
+    /**
+     * Walks the entries in order, which takes O(n) for the whole list instead of O(n log n) with get.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private Entry<T> nextEntry = first(root);
+            private Entry<T> lastEntry;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return nextEntry != null;
+            }
+
+            @Override
+            public T next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (nextEntry == null) {
+                    throw new NoSuchElementException();
+                }
+                lastEntry = nextEntry;
+                nextEntry = PlayQueue.next(nextEntry);
+                return lastEntry.value;
+            }
+
+            @Override
+            public void remove() {
+                if (lastEntry == null) {
+                    throw new IllegalStateException();
+                }
+                removeEntry(lastEntry);
+                lastEntry = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * Inserts a value at a position.
+     * @param index The position, from 0 to size.
+     * @param value The value to insert.
+     * @return The new entry.
+     */
+    public Entry<T> insert(int index, T value) {
+        Entry<T> entry = new Entry<>(value);
+        attach(index, entry);
+        return entry;
+    }
+
+    /**
+     * Gets the entry at a position.
+     * @param index The position.
+     * @return The entry.
+     */
+    public Entry<T> entryAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        Entry<T> entry = root;
+        while (true) {
+            int leftSize = size(entry.left);
+            if (index < leftSize) {
+                entry = entry.left;
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1;
+                entry = entry.right;
+            }
+            else {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Finds the current position of an entry, by counting the entries before it on the way up to the root.
+     * @param entry The entry.
+     * @return The position, or -1 if the entry isn't in this list.
+     */
+    public int indexOfEntry(Entry<T> entry) {
+        if (entry == null || entry.queue != this) {
+            return -1;
+        }
+        int index = size(entry.left);
+        for (Entry<T> child = entry, parent = entry.parent; parent != null; child = parent, parent = parent.parent) {
+            if (child == parent.right) {
+                index += size(parent.left) + 1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Removes an entry.
+     * @param entry The entry to remove.
+     * @return true if the entry was in this list.
+     */
+    public boolean removeEntry(Entry<T> entry) {
+        int index = indexOfEntry(entry);
+        if (index < 0) {
+            return false;
+        }
+        detach(index);
+        return true;
+    }
+
+    /**
+     * Moves the entry at one position to another. The entry keeps its identity.
+     * @param fromIndex The current position of the entry.
+     * @param toIndex The position the entry should end up at.
+     */
+    public void move(int fromIndex, int toIndex) {
+        if (toIndex < 0 || toIndex >= size()) {
+            throw new IndexOutOfBoundsException("Index " + toIndex + " out of bounds for length " + size());
+        }
+        if (fromIndex != toIndex) {
+            attach(toIndex, detach(fromIndex));
+        }
+    }
+
+    private void attach(int index, Entry<T> entry) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        entry.queue = this;
+        Halves<T> halves = new Halves<>();
+        split(root, index, halves);
+        setRoot(merge(merge(halves.first, entry), halves.rest));
+        modCount++;
+    }
+
+    private Entry<T> detach(int index) {
+        Entry<T> entry = entryAt(index);
+        Halves<T> before = new Halves<>();
+        split(root, index, before);
+        Halves<T> after = new Halves<>();
+        split(before.rest, 1, after);
+        setRoot(merge(before.first, after.rest));
+
+        entry.left = null;
+        entry.right = null;
+        entry.parent = null;
+        entry.size = 1;
+        entry.queue = null;
+        modCount++;
+        return entry;
+    }
+
+    /**
+     * Splits a tree into its first count entries and the rest.
+     */
+    private static <T> void split(Entry<T> node, int count, Halves<T> halves) {
+        if (node == null) {
+            halves.first = null;
+            halves.rest = null;
+            return;
+        }
+        if (size(node.left) < count) {
+            split(node.right, count - size(node.left) - 1, halves);
+            setRight(node, halves.first);
+            halves.first = node;
+        }
+        else {
+            split(node.left, count, halves);
+            setLeft(node, halves.rest);
+            halves.rest = node;
+        }
+    }
+
+    /**
+     * Joins two trees, where every entry of the first comes before every entry of the second.
+     */
+    private static <T> Entry<T> merge(Entry<T> first, Entry<T> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            setRight(first, merge(first.right, second));
+            return first;
+        }
+        setLeft(second, merge(first, second.left));
+        return second;
+    }
+
+    private void setRoot(Entry<T> entry) {
+        root = entry;
+        if (entry != null) {
+            entry.parent = null;
+        }
+    }
+
+    private static <T> void setLeft(Entry<T> node, Entry<T> child) {
+        node.left = child;
+        if (child != null) {
+            child.parent = node;
+        }
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static <T> void setRight(Entry<T> node, Entry<T> child) {
+        node.right = child;
+        if (child != null) {
+            child.parent = node;
+        }
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(Entry<?> entry) {
+        return entry != null ? entry.size : 0;
+    }
+
+    private static <T> Entry<T> first(Entry<T> entry) {
+        if (entry == null) {
+            return null;
+        }
+        while (entry.left != null) {
+            entry = entry.left;
+        }
+        return entry;
+    }
+
+    /**
+     * The entry after the given one, found through the parents.
+     */
+    private static <T> Entry<T> next(Entry<T> entry) {
+        if (entry.right != null) {
+            return first(entry.right);
+        }
+        while (entry.parent != null && entry == entry.parent.right) {
+            entry = entry.parent;
+        }
+        return entry.parent;
+    }
+}
@@ -1,9 +1,11 @@
 package BLL.Interfaces;
 
 import BE.PlayList;
+import BE.PlayQueue;
 import BE.Song;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface IPlayListManager {
 
@@ -14,6 +16,14 @@ public interface IPlayListManager {
      */
     List<PlayList> getAllPlayLists() throws Exception;
 
+    /**
+     * Reads the songs of a playlist again in the background, e.g. after a change failed because the playlist had changed.
+     * The PlayList object isn't changed, the caller replaces its songs.
+     * @param playList The playlist.
+     * @return a future with the songs of the playlist in order.
+     */
+    CompletableFuture<List<Song>> getSongsInPlayListAsync(PlayList playList);
+
     /**
      * Adds a song to a playlist.
      * @param playList The playlist to add the song to.
@@ -23,15 +33,16 @@ public interface IPlayListManager {
     void addSongToPlayList(PlayList playList, Song song) throws Exception;
 
     /**
-     * removes a song from a playlist.
+     * removes a song from a playlist. The PlayList object isn't changed, the caller removes the song from it.
      * @param playList last selected playlist.
      * @param song last selected song.
+     * @param songIndex the position of the song in the playlist.
      * @throws Exception if it fails to remove the song.
      */
-    void removeSOP(PlayList playList, Song song) throws Exception;
+    void removeSOP(PlayList playList, Song song, int songIndex) throws Exception;
 
     /**
-     * updates a playlist title.
+     * updates a playlist title and smart playlist rule.
      * @param playList last selected playlist.
      * @throws Exception if it fails to update playlist.
      */
@@ -54,10 +65,50 @@ public interface IPlayListManager {
 
     /**
      * Moves the songsPlacement in a playlist in the database.
+     * The PlayList object isn't changed, the caller moves the song in it.
      * @param playList the playlist the song is moved in.
-     * @param song the song that is moved
+     * @param entry the place of the song that is moved.
      * @param moveUp the direction the song should be moved.
      * @throws Exception if it fails to move the song.
      */
-    void moveSOP(PlayList playList, Song song, Boolean moveUp) throws Exception;
-}
\ No newline at end of file
+    void moveSOP(PlayList playList, PlayQueue.Entry<Song> entry, Boolean moveUp) throws Exception;
+
+    /**
+     * Moves a song in a playlist from one position to another.
+     * The PlayList object isn't changed, the caller moves the song in it.
+     * @param playList the playlist the song is moved in.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @throws Exception if it fails to move the song.
+     */
+    void moveTo(PlayList playList, int fromIndex, int toIndex) throws Exception;
+
+    /**
+     * Adds a song to a playlist in the background.
+     * The write isn't interrupted if the future is cancelled, see AsyncExecutor.write.
+     * @param playList The playlist to add the song to.
+     * @param song The song to add to the playlist.
+     * @return a future that completes when the song has been added.
+     */
+    CompletableFuture<Void> addSongToPlayListAsync(PlayList playList, Song song);
+
+    /**
+     * removes a song from a playlist in the background.
+     * The write isn't interrupted if the future is cancelled, see AsyncExecutor.write.
+     * @param playList last selected playlist.
+     * @param song last selected song.
+     * @param songIndex the position of the song in the playlist, found on the JavaFX thread.
+     * @return a future that completes when the song has been removed.
+     */
+    CompletableFuture<Void> removeSOPAsync(PlayList playList, Song song, int songIndex);
+
+    /**
+     * Moves a song in a playlist from one position to another in the background.
+     * The write isn't interrupted if the future is cancelled, see AsyncExecutor.write.
+     * @param playList the playlist the song is moved in.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @return a future that completes when the song has been moved.
+     */
+    CompletableFuture<Void> moveToAsync(PlayList playList, int fromIndex, int toIndex);
+}
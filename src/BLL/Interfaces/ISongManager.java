@@ -1,8 +1,15 @@
 package BLL.Interfaces;
 
+import BE.PlayList;
 import BE.Song;
+import BLL.Util.CacheStatistics;
+import BLL.Util.SearchMode;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleConsumer;
 
 public interface ISongManager {
 
@@ -14,19 +21,120 @@ public interface ISongManager {
     List<Song> getAllSongs() throws Exception;
 
     /**
-     * Filter the list of songs in library using a search query
+     * Reads all songs from the database again, to pick up changes made outside this program.
+     * @throws Exception If it fails to retrieve all songs.
+     */
+    void reloadLibrary() throws Exception;
+
+    /**
+     * Keeps the songs of a smart playlist matching its rule as songs are created, updated and deleted.
+     * @param playList The smart playlist, which is filled with the matching songs on the executor of applySmartPlaylistChangesOn.
+     * @throws Exception If it fails to retrieve all songs.
+     */
+    void watchSmartPlaylist(PlayList playList) throws Exception;
+
+    /**
+     * Stops keeping the songs of a playlist up to date, e.g. when it is deleted or no longer smart.
+     * @param playList The playlist.
+     */
+    void unwatchSmartPlaylist(PlayList playList);
+
+    /**
+     * Chooses where the songs of the smart playlists are changed, as the library also changes in the background,
+     * e.g. when it is reloaded.
+     * @param executor Runs the changes to the PlayList objects, e.g. on the JavaFX thread.
+     * @param onChanged Runs on the executor after the songs of a smart playlist have changed.
+     */
+    void applySmartPlaylistChangesOn(Executor executor, Runnable onChanged);
+
+    /**
+     * Chooses how the library is searched.
+     * @param searchMode INDEXED (the default) or PARALLEL.
+     */
+    void setSearchMode(SearchMode searchMode);
+
+    SearchMode getSearchMode();
+
+    /**
+     * Returns the hit, miss and staleness statistics of the library cache.
+     * @return A snapshot of the cache statistics.
+     */
+    CacheStatistics getCacheStatistics();
+
+    /**
+     * Filter the list of songs in library using a search query.
+     * The query may use field filters, e.g. artist:queen genre:rock duration:>300 "bohemian", with AND, OR and NOT.
+     * Only songs containing the query are returned, see searchFuzzy for close matches.
      * @param query, the string input used to filter
      * @return a list of songs matching the query in either title, artist or category
      * @throws Exception If it fails to search.
      */
     List<Song> search(String query) throws Exception;
 
+    /**
+     * Filter the list of songs in library using a search query, allowing typos in the words of the title and artist.
+     * @param query, the string input used to filter
+     * @return a list of songs matching the query, the closest matches first
+     * @throws Exception If it fails to search.
+     */
+    List<Song> searchFuzzy(String query) throws Exception;
+
+    /**
+     * Filter the list of songs in library using a search query allowing typos, in the background.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return a future with up to limit songs matching the query, the closest matches first
+     */
+    CompletableFuture<List<Song>> searchFuzzyAsync(String query, int limit);
+
+    /**
+     * Filter the list of songs in library using a search query, and return only the best matches.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return up to limit songs matching the query, the best first
+     * @throws Exception If it fails to search.
+     */
+    List<Song> searchRanked(String query, int limit) throws Exception;
+
+    /**
+     * Filter the list of songs in library using a search query, and return only the best matches, in the background.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return a future with up to limit songs matching the query, the best first
+     */
+    CompletableFuture<List<Song>> searchRankedAsync(String query, int limit);
+
+    /**
+     * Suggests titles, artists and genres starting with what the user has typed.
+     * @param prefix, the string input to complete
+     * @param limit, the number of suggestions to return at most
+     * @return up to limit suggestions, the ones shared by the most songs first
+     * @throws Exception If it fails to read the songs.
+     */
+    List<String> suggest(String prefix, int limit) throws Exception;
+
+    /**
+     * Suggests titles, artists and genres starting with what the user has typed, in the background.
+     * @param prefix, the string input to complete
+     * @param limit, the number of suggestions to return at most
+     * @return a future with up to limit suggestions, the ones shared by the most songs first
+     */
+    CompletableFuture<List<String>> suggestAsync(String prefix, int limit);
+
+    /**
+     * Filter the list of songs in library using a search query, in the background.
+     * @param query, the string input used to filter
+     * @return a future with the list of songs matching the query in either title, artist or category
+     */
+    CompletableFuture<List<Song>> searchAsync(String query);
+
     /**
      * Update/Edit a song
-     * @param song, the selected song to update
+     * @param song, a new Song object with the id of the song to update and the new values
+     * @return the song as it is stored, which replaces the old Song object
      * @throws Exception If it fails to update the song.
      */
-    void updateSong(Song song) throws Exception;
+    Song updateSong(Song song) throws Exception;
 
     /**
      * Delete a song.
@@ -36,4 +144,13 @@ public interface ISongManager {
     void deleteSong(Song song) throws Exception;
 
     Song createSong(Song song) throws Exception;
+
+    /**
+     * Creates several songs at once, for importing an album or a folder.
+     * @param songs The songs to create.
+     * @param progress Receives the progress between 0 and 1, possibly from a background thread.
+     * @return The newly created songs, in the same order as given.
+     * @throws Exception If it fails to create the songs.
+     */
+    List<Song> createSongs(Collection<Song> songs, DoubleConsumer progress) throws Exception;
 }
@@ -1,27 +1,40 @@
 package BLL;
 
 import BE.PlayList;
+import BE.PlayQueue;
 import BE.Song;
 import BLL.Interfaces.IPlayListManager;
-import DAL.DB.PlayListDAO_DB;
+import BLL.Interfaces.ISongManager;
+import BLL.Util.AsyncExecutor;
+import DAL.Util.DAOFactory;
 import DAL.Interfaces.IPlaylistDAO;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class PlayListManager implements IPlayListManager {
     private IPlaylistDAO databaseAcces;
+    // Keeps the songs of the smart playlists up to date with the library.
+    private ISongManager songManager;
 
     public PlayListManager() {
-        databaseAcces = new PlayListDAO_DB();
+        databaseAcces = DAOFactory.createPlaylistDAO();
+        songManager = new SongManager();
     }
 
     /**
-     * Returns all playlists.
+     * Returns all playlists. The smart playlists are filled with the songs matching their rules.
      * @return a list of all playlists.
      * @throws Exception If it fails to retrieve all playlists.
      */
     public List<PlayList> getAllPlayLists() throws Exception{
-        return databaseAcces.getAllPlayLists();
+        List<PlayList> allPlayLists = databaseAcces.getAllPlayLists();
+        for (PlayList playList : allPlayLists) {
+            if (playList.isSmart()) {
+                songManager.watchSmartPlaylist(playList);
+            }
+        }
+        return allPlayLists;
     }
 
     /**
@@ -31,26 +44,85 @@ public class PlayListManager implements IPlayListManager {
      * @throws Exception If it fails to add the song.
      */
     public void addSongToPlayList(PlayList playList, Song song) throws Exception {
+        checkNotSmart(playList);
         databaseAcces.addSongToPlayList(playList, song);
     }
 
-    public void removeSOP(PlayList playList, Song song) throws Exception{
-        databaseAcces.removeSOP(playList, song);
+    public void removeSOP(PlayList playList, Song song, int songIndex) throws Exception{
+        checkNotSmart(playList);
+        databaseAcces.removeSOP(playList, song, songIndex);
     }
 
+    /**
+     * Updates the title and the rule of a playlist.
+     * A smart playlist is filled again with the songs matching its rule.
+     * @param playList the changed playlist.
+     * @throws Exception If it fails to update the playlist.
+     */
     public void updatePlayList(PlayList playList) throws Exception{
         databaseAcces.updatePlayList(playList);
+
+        if (playList.isSmart()) {
+            songManager.watchSmartPlaylist(playList);
+        }
+        else {
+            songManager.unwatchSmartPlaylist(playList);
+        }
     }
 
+    /**
+     * Creates a playlist. A smart playlist is filled with the songs matching its rule.
+     * @param playList the new playlist.
+     * @return the new playlist with its id.
+     * @throws Exception If it fails to create the playlist.
+     */
     public PlayList createPlayList(PlayList playList) throws Exception{
-        return databaseAcces.createPlayList(playList);
+        PlayList newPlayList = databaseAcces.createPlayList(playList);
+        if (newPlayList.isSmart()) {
+            songManager.watchSmartPlaylist(newPlayList);
+        }
+        return newPlayList;
     }
 
     public void deletePlayList(PlayList playList) throws Exception{
         databaseAcces.deletePlayList(playList);
+        songManager.unwatchSmartPlaylist(playList);
+    }
+
+    public void moveSOP(PlayList playList, PlayQueue.Entry<Song> entry, Boolean moveUp) throws Exception{
+        checkNotSmart(playList);
+        databaseAcces.moveSOP(playList, entry, moveUp);
+    }
+
+    public void moveTo(PlayList playList, int fromIndex, int toIndex) throws Exception{
+        checkNotSmart(playList);
+        databaseAcces.moveTo(playList, fromIndex, toIndex);
+    }
+
+    /**
+     * The songs of a smart playlist follow its rule, so they can't be added, removed or moved by hand.
+     * @param playList The playlist to change.
+     * @throws Exception If the playlist is a smart playlist.
+     */
+    private void checkNotSmart(PlayList playList) throws Exception {
+        if (playList.isSmart()) {
+            throw new Exception("The songs of the smart playlist \"" + playList.getTitle() + "\" follow its rule, and can't be changed by hand");
+        }
+    }
+
+    public CompletableFuture<List<Song>> getSongsInPlayListAsync(PlayList playList) {
+        return AsyncExecutor.supply(() -> databaseAcces.getSongsInPlayList(playList));
+    }
+
+    public CompletableFuture<Void> addSongToPlayListAsync(PlayList playList, Song song) {
+        return AsyncExecutor.write(() -> addSongToPlayList(playList, song));
+    }
+
+    public CompletableFuture<Void> removeSOPAsync(PlayList playList, Song song, int songIndex) {
+        return AsyncExecutor.write(() -> removeSOP(playList, song, songIndex));
     }
 
-    public void moveSOP(PlayList playList, Song song, Boolean moveUp) throws Exception{
-        databaseAcces.moveSOP(playList, song, moveUp);
+    public CompletableFuture<Void> moveToAsync(PlayList playList, int fromIndex, int toIndex) {
+        return AsyncExecutor.write(() -> moveTo(playList, fromIndex, toIndex));
     }
 }
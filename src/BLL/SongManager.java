@@ -1,51 +1,247 @@
 package BLL;
 
+import BE.PlayList;
 import BE.Song;
 import BLL.Interfaces.ISongManager;
+import BLL.Util.AsyncExecutor;
+import BLL.Util.CacheStatistics;
+import BLL.Util.ParallelSongSearcher;
+import BLL.Util.SearchMode;
+import BLL.Util.SearchSession;
+import BLL.Util.SongLibraryCache;
+import BLL.Util.SongQueryParser;
+import BLL.Util.SongRanker;
 import BLL.Util.SongSearcher;
 import DAL.Interfaces.ISongDAO;
-import DAL.DB.SongDao_DB;
+import DAL.Util.DAOFactory;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleConsumer;
 
 public class SongManager implements ISongManager {
+    // Songs changed outside this program show up within this interval.
+    private static final long LIBRARY_RELOAD_INTERVAL_MILLIS = 5 * 60_000;
+
     private ISongDAO databaseAccess;
-    private SongSearcher songSearcher;
+    private SearchSession searchSession;
+    private volatile SearchMode searchMode = SearchMode.INDEXED;
+    private static final ParallelSongSearcher parallelSearcher = new ParallelSongSearcher();
+    // Shared by every SongManager, so a change made through one is seen by all of them.
+    private static SongSearcher songSearcher;
+    private static SongLibraryCache libraryCache;
 
     public SongManager() {
-        databaseAccess = new SongDao_DB();
-        songSearcher = new SongSearcher();
+        databaseAccess = DAOFactory.createSongDAO();
+
+        synchronized (SongManager.class) {
+            if (libraryCache == null) {
+                songSearcher = new SongSearcher();
+                libraryCache = new SongLibraryCache(databaseAccess, songSearcher, LIBRARY_RELOAD_INTERVAL_MILLIS);
+                libraryCache.startPeriodicReload();
+            }
+        }
+        searchSession = new SearchSession(libraryCache, songSearcher);
     }
 
     /**
-     * Returns all songs
+     * Returns all songs from the library cache. The songs are only read from the database the first time.
      * @return A list of all songs.
      * @throws Exception If it fails to retrieve all songs.
      */
     public List<Song> getAllSongs() throws Exception {
-        return databaseAccess.getAllSongs();
+        return new ArrayList<>(libraryCache.getSongs());
+    }
+
+    /**
+     * Reads all songs from the database again, to pick up changes made outside this program.
+     * @throws Exception If it fails to retrieve all songs.
+     */
+    public void reloadLibrary() throws Exception {
+        libraryCache.reload();
+    }
+
+    /**
+     * Keeps the songs of a smart playlist matching its rule as songs are created, updated and deleted.
+     * @param playList The smart playlist, which is filled with the matching songs on the executor of applySmartPlaylistChangesOn.
+     * @throws Exception If it fails to retrieve all songs.
+     */
+    public void watchSmartPlaylist(PlayList playList) throws Exception {
+        // Makes sure the songs have been read and indexed.
+        libraryCache.getSongs();
+        songSearcher.watchSmartPlaylist(playList);
+    }
+
+    /**
+     * Stops keeping the songs of a playlist up to date, e.g. when it is deleted or no longer smart.
+     * @param playList The playlist.
+     */
+    public void unwatchSmartPlaylist(PlayList playList) {
+        songSearcher.unwatchSmartPlaylist(playList);
+    }
+
+    /**
+     * Chooses where the songs of the smart playlists are changed, as the library also changes in the background,
+     * e.g. when it is reloaded.
+     * @param executor Runs the changes to the PlayList objects, e.g. on the JavaFX thread.
+     * @param onChanged Runs on the executor after the songs of a smart playlist have changed.
+     */
+    public void applySmartPlaylistChangesOn(Executor executor, Runnable onChanged) {
+        songSearcher.applySmartPlaylistChangesOn(executor, onChanged);
+    }
+
+    /**
+     * Chooses how the library is searched.
+     * @param searchMode INDEXED (the default) or PARALLEL.
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Returns the hit, miss and staleness statistics of the library cache.
+     * @return A snapshot of the cache statistics.
+     */
+    public CacheStatistics getCacheStatistics() {
+        return libraryCache.getStatistics();
     }
 
     /**
-     * Filter the list of songs in library using a search query
+     * Filter the list of songs in library using a search query.
+     * A query using the search language, e.g. artist:queen duration:>300, is parsed and run against the field indexes.
+     * When the query extends the previous one, only the previous results are filtered.
+     * Only songs containing the query are returned. Use searchFuzzy to find the songs closest to a misspelled query.
      * @param query, the string input used to filter
      * @return a list of songs matching the query in either title, artist or category
      * @throws Exception If it fails to search.
      */
     public List<Song> search(String query) throws Exception {
-        List<Song> allSongs = getAllSongs();
-        List<Song> searchResult = songSearcher.search(allSongs, query);
+        if (SongQueryParser.isStructured(query)) {
+            // Makes sure the songs have been read and indexed.
+            libraryCache.getSongs();
+            return songSearcher.searchQuery(query);
+        }
+
+        return searchMode == SearchMode.PARALLEL
+                ? parallelSearcher.search(libraryCache.getSongs(), query, songSearcher::keyOf)
+                : searchSession.search(query);
+    }
+
+    /**
+     * Filter the list of songs in library using a search query, allowing typos in the words of the title and artist.
+     * Queries using the search language have no close matches, so nothing is returned for them.
+     * @param query, the string input used to filter
+     * @return a list of songs matching the query, the closest matches first
+     * @throws Exception If it fails to search.
+     */
+    public List<Song> searchFuzzy(String query) throws Exception {
+        if (SongQueryParser.isStructured(query)) {
+            return new ArrayList<>();
+        }
+
+        // Makes sure the songs have been read and indexed.
+        libraryCache.getSongs();
+        return songSearcher.searchFuzzy(query);
+    }
+
+    /**
+     * Filter the list of songs in library using a search query allowing typos, in the background.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return a future with up to limit songs matching the query, the closest matches first
+     */
+    public CompletableFuture<List<Song>> searchFuzzyAsync(String query, int limit) {
+        return AsyncExecutor.supply(() -> {
+            List<Song> searchResult = searchFuzzy(query);
+            return new ArrayList<>(searchResult.subList(0, Math.min(limit, searchResult.size())));
+        });
+    }
+
+    /**
+     * Filter the list of songs in library using a search query, and return only the best matches.
+     * Matches in the title rank above the artist and genre, and exact and prefix matches above matches inside a word.
+     * Structured queries are not ranked, so their first songs by id are returned.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return up to limit songs matching the query, the best first
+     * @throws Exception If it fails to search.
+     */
+    public List<Song> searchRanked(String query, int limit) throws Exception {
+        List<Song> searchResult = search(query);
+
+        if (SongQueryParser.isStructured(query)) {
+            return new ArrayList<>(searchResult.subList(0, Math.min(limit, searchResult.size())));
+        }
+        return SongRanker.topK(searchResult, query, limit, songSearcher::keyOf);
+    }
+
+    /**
+     * Filter the list of songs in library using a search query, and return only the best matches, in the background.
+     * @param query, the string input used to filter
+     * @param limit, the number of songs to return at most
+     * @return a future with up to limit songs matching the query, the best first
+     */
+    public CompletableFuture<List<Song>> searchRankedAsync(String query, int limit) {
+        return AsyncExecutor.supply(() -> searchRanked(query, limit));
+    }
+
+    /**
+     * Suggests titles, artists and genres starting with what the user has typed.
+     * Nothing is suggested for queries using the search language.
+     * @param prefix, the string input to complete
+     * @param limit, the number of suggestions to return at most
+     * @return up to limit suggestions, the ones shared by the most songs first
+     * @throws Exception If it fails to read the songs.
+     */
+    public List<String> suggest(String prefix, int limit) throws Exception {
+        if (SongQueryParser.isStructured(prefix)) {
+            return new ArrayList<>();
+        }
+
+        // Makes sure the songs have been read and indexed.
+        libraryCache.getSongs();
+        return songSearcher.suggest(prefix, limit);
+    }
+
+    /**
+     * Suggests titles, artists and genres starting with what the user has typed, in the background.
+     * The first suggestions may have to wait for the library to be read.
+     * @param prefix, the string input to complete
+     * @param limit, the number of suggestions to return at most
+     * @return a future with up to limit suggestions, the ones shared by the most songs first
+     */
+    public CompletableFuture<List<String>> suggestAsync(String prefix, int limit) {
+        return AsyncExecutor.supply(() -> suggest(prefix, limit));
+    }
 
-        return searchResult;
+    /**
+     * Filter the list of songs in library using a search query, in the background.
+     * @param query, the string input used to filter
+     * @return a future with the list of songs matching the query in either title, artist or category
+     */
+    public CompletableFuture<List<Song>> searchAsync(String query) {
+        return AsyncExecutor.supply(() -> search(query));
     }
 
     /**
      * Update/Edit a song
-     * @param song, the selected song to update
+     * @param song, a new Song object with the id of the song to update and the new values
+     * @return the song as it is stored, which replaces the old Song object
      * @throws Exception If it fails to update the song.
      */
     @Override
-    public void updateSong(Song song) throws Exception {
+    public Song updateSong(Song song) throws Exception {
         databaseAccess.updateSong(song);
+        // The DAO gives a new Song object for the id, which replaces the old one in the cache.
+        Song storedSong = databaseAccess.getSongObjectFromId(song.getId());
+        libraryCache.update(storedSong);
+        return storedSong;
     }
 
     /**
@@ -56,6 +252,7 @@ public class SongManager implements ISongManager {
     @Override
     public void deleteSong(Song song) throws Exception {
         databaseAccess.deleteSong(song);
+        libraryCache.remove(song);
     }
 
     /**
@@ -65,6 +262,21 @@ public class SongManager implements ISongManager {
      * @throws Exception If it fails to create the song.
      */
     public Song createSong(Song song) throws Exception {
-       return databaseAccess.createSong(song);
+        Song createdSong = databaseAccess.createSong(song);
+        libraryCache.addAll(List.of(createdSong));
+        return createdSong;
+    }
+
+    /**
+     * Creates several songs at once.
+     * @param songs The songs to create.
+     * @param progress Receives the progress between 0 and 1, possibly from a background thread.
+     * @return The newly created songs, in the same order as given.
+     * @throws Exception If it fails to create the songs.
+     */
+    public List<Song> createSongs(Collection<Song> songs, DoubleConsumer progress) throws Exception {
+        List<Song> createdSongs = databaseAccess.createSongs(songs, progress);
+        libraryCache.addAll(createdSongs);
+        return createdSongs;
     }
 }
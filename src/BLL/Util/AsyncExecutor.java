@@ -0,0 +1,118 @@
+package BLL.Util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs blocking calls, like database round trips, off the JavaFX thread.
+ * Every task gets its own virtual thread when the JVM supports it.
+ */
+public class AsyncExecutor {
+    public static final long DEFAULT_TIMEOUT_SECONDS = 30;
+
+    private static final ExecutorService executor = createExecutor();
+
+    /**
+     * A task that doesn't return anything, but may throw like the manager methods do.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a task in the background with the default timeout.
+     * @param task The task to run.
+     * @return A future with the result of the task.
+     */
+    public static <T> CompletableFuture<T> supply(Callable<T> task) {
+        return supply(task, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Runs a task in the background.
+     * Cancelling the future, or the timeout running out, interrupts the task.
+     * @param task The task to run.
+     * @param timeoutSeconds How long the task may run before the future fails with a TimeoutException.
+     * @return A future with the result of the task.
+     */
+    public static <T> CompletableFuture<T> supply(Callable<T> task, long timeoutSeconds) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        Future<?> running = executor.submit(() -> {
+            try {
+                result.complete(task.call());
+            }
+            catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        CompletableFuture.delayedExecutor(timeoutSeconds, TimeUnit.SECONDS).execute(() ->
+                result.completeExceptionally(new TimeoutException("The operation timed out after " + timeoutSeconds + " seconds")));
+
+        // Stops the task if nobody is waiting for it anymore.
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled() || error instanceof TimeoutException) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs a task without a result in the background with the default timeout.
+     * @param task The task to run.
+     * @return A future that completes when the task is done.
+     */
+    public static CompletableFuture<Void> run(Task task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a write, like saving a change to a playlist, in the background.
+     * Unlike supply and run, a write has no timeout and isn't interrupted when its future is cancelled,
+     * as a write stopped halfway may still be committed, and the GUI would no longer match what is saved.
+     * @param task The write to run.
+     * @return A future that completes when the write is done.
+     */
+    public static CompletableFuture<Void> write(Task task) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+
+        executor.execute(() -> {
+            try {
+                task.run();
+                result.complete(null);
+            }
+            catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Uses virtual threads if the JVM has them (Java 21, or 19 with preview features enabled),
+     * otherwise a cached pool of daemon threads.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "AsyncExecutor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
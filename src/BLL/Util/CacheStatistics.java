@@ -0,0 +1,58 @@
+package BLL.Util;
+
+public class CacheStatistics {
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long reloads;
+    private final long writesSinceReload;
+    private final long ageMillis;
+    private final boolean stale;
+
+    public CacheStatistics(int size, long hits, long misses, long reloads, long writesSinceReload, long ageMillis, boolean stale) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.reloads = reloads;
+        this.writesSinceReload = writesSinceReload;
+        this.ageMillis = ageMillis;
+        this.stale = stale;
+    }
+
+    public int getSize() { return size; }
+
+    public long getHits() { return hits; }
+
+    public long getMisses() { return misses; }
+
+    public long getReloads() { return reloads; }
+
+    public long getWritesSinceReload() { return writesSinceReload; }
+
+    /**
+     * How long ago the songs were last read from the database, or -1 if they have never been read.
+     */
+    public long getAgeMillis() { return ageMillis; }
+
+    /**
+     * Whether the songs are older than the reload interval, so changes made
+     * outside this program may be missing.
+     */
+    public boolean isStale() { return stale; }
+
+    /**
+     * The share of reads that were served without a database round trip.
+     * @return A value between 0 and 1.
+     */
+    public double getHitRatio() {
+        long reads = hits + misses;
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    @Override
+    public String toString() {
+        return "[songs " + size + ", hits " + hits + ", misses " + misses + ", reloads " + reloads
+                + ", writes since reload " + writesSinceReload + ", age " + ageMillis + " ms"
+                + (stale ? ", stale" : "") + "]";
+    }
+}
@@ -0,0 +1,213 @@
+package BLL.Util;
+
+import BE.Song;
+import DAL.Util.IntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Typo tolerant search over the words in the titles and artists of songs.
+ * Every distinct word is kept in a LevenshteinTrie, so the words close to a query word are found
+ * without comparing it to every song. A song matches when every word of the query is
+ * close to one of its words, and the songs are ranked by how many edits that took.
+ */
+public class FuzzySearcher {
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * A song with the words it was indexed under, so it can be removed again
+     * after the Song object has been changed.
+     */
+    private static class IndexedSong {
+        private final Song song;
+        private final Set<String> words;
+
+        private IndexedSong(SearchKey key) {
+            this.song = key.getSong();
+            this.words = new HashSet<>();
+            this.words.addAll(splitWords(key.getTitle()));
+            this.words.addAll(splitWords(key.getArtist()));
+        }
+    }
+
+    private LevenshteinTrie dictionary = new LevenshteinTrie();
+    // The ids of the songs using each word.
+    private final Map<String, Set<Integer>> songsByWord = new HashMap<>();
+    private final IntHashMap<IndexedSong> songs = new IntHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Replaces everything in the index with the given songs.
+     * @param allSongs The keys of the songs to index.
+     */
+    public void rebuild(Collection<SearchKey> allSongs) {
+        lock.writeLock().lock();
+        try {
+            dictionary = new LevenshteinTrie();
+            songsByWord.clear();
+            songs.clear();
+            for (SearchKey key : allSongs) {
+                addIndexed(key);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a song, or re-indexes it if a song with the same id is already indexed.
+     * @param key The key of the song to add.
+     */
+    public void add(SearchKey key) {
+        lock.writeLock().lock();
+        try {
+            removeIndexed(key.getSong().getId());
+            addIndexed(key);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a song from the index.
+     * @param songId The id of the song to remove.
+     */
+    public void remove(int songId) {
+        lock.writeLock().lock();
+        try {
+            removeIndexed(songId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the songs with a word close to every word of the query, in title or artist.
+     * Short words have to match exactly, longer words may be one or two edits off.
+     * @param query The text to search for.
+     * @return The matching songs, the closest first, and by id when they are equally close.
+     */
+    public List<Song> search(String query) {
+        Set<String> queryWords = splitWords(SearchKey.fold(query));
+        if (queryWords.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            // The summed distance of every song that matched all query words so far.
+            Map<Integer, Integer> totalDistances = null;
+
+            for (String queryWord : queryWords) {
+                Map<Integer, Integer> wordDistances = new HashMap<>();
+                dictionary.search(queryWord, maxDistance(queryWord), (word, distance) -> {
+                    Set<Integer> songIds = songsByWord.get(word);
+                    if (songIds != null) {
+                        for (int songId : songIds) {
+                            wordDistances.merge(songId, distance, Math::min);
+                        }
+                    }
+                });
+
+                if (totalDistances == null) {
+                    totalDistances = wordDistances;
+                }
+                else {
+                    Map<Integer, Integer> previous = totalDistances;
+                    totalDistances = new HashMap<>();
+                    for (Map.Entry<Integer, Integer> entry : wordDistances.entrySet()) {
+                        Integer previousDistance = previous.get(entry.getKey());
+                        if (previousDistance != null) {
+                            totalDistances.put(entry.getKey(), previousDistance + entry.getValue());
+                        }
+                    }
+                }
+                if (totalDistances.isEmpty()) {
+                    break;
+                }
+            }
+
+            List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(totalDistances.entrySet());
+            ranked.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+            List<Song> searchResult = new ArrayList<>(ranked.size());
+            for (Map.Entry<Integer, Integer> entry : ranked) {
+                searchResult.add(songs.get(entry.getKey()).song);
+            }
+            return searchResult;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The number of typos allowed in a word of the query.
+     */
+    private static int maxDistance(String word) {
+        if (word.length() <= 3) {
+            return 0;
+        }
+        return word.length() <= 6 ? 1 : 2;
+    }
+
+    private void addIndexed(SearchKey key) {
+        IndexedSong indexedSong = new IndexedSong(key);
+        Song song = indexedSong.song;
+        songs.put(song.getId(), indexedSong);
+
+        for (String word : indexedSong.words) {
+            Set<Integer> songIds = songsByWord.get(word);
+            if (songIds == null) {
+                songIds = new HashSet<>();
+                songsByWord.put(word, songIds);
+                dictionary.add(word);
+            }
+            songIds.add(song.getId());
+        }
+    }
+
+    private void removeIndexed(int songId) {
+        IndexedSong indexedSong = songs.remove(songId);
+        if (indexedSong == null) {
+            return;
+        }
+
+        for (String word : indexedSong.words) {
+            Set<Integer> songIds = songsByWord.get(word);
+            if (songIds != null) {
+                songIds.remove(songId);
+                if (songIds.isEmpty()) {
+                    songsByWord.remove(word);
+                    dictionary.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a folded text into its distinct words.
+     */
+    private static Set<String> splitWords(String foldedText) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : WORD_SEPARATOR.split(foldedText)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
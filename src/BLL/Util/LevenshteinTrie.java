@@ -0,0 +1,160 @@
+package BLL.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A trie of words, for finding every word within an edit distance of a query.
+ * The search walks the trie while keeping one row of the Levenshtein distance table per
+ * character, so words sharing a prefix share the work, and a branch is left as soon as
+ * no word in it can be close enough. It works like a Levenshtein automaton run against the trie.
+ */
+public class LevenshteinTrie {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static class Node {
+        // Sorted, so a child is found with a binary search.
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // The word ending at this node, or null if none does.
+        private String word;
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+
+            Node child = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = key;
+            newChildren[index] = child;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        private void removeChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                return;
+            }
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys.length == 0 ? NO_KEYS : newKeys;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+    }
+
+    private final Node root = new Node();
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a word, if it isn't there already.
+     * @param word The word to add.
+     */
+    public void add(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.addChild(word.charAt(i));
+        }
+        if (node.word == null) {
+            node.word = word;
+            size++;
+        }
+    }
+
+    /**
+     * Removes a word, along with the branch that only led to it.
+     * @param word The word to remove.
+     */
+    public void remove(String word) {
+        List<Node> path = new ArrayList<>(word.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.child(word.charAt(i));
+            path.add(node);
+        }
+        if (node == null || node.word == null) {
+            return;
+        }
+        node.word = null;
+        size--;
+
+        for (int i = word.length(); i > 0; i--) {
+            Node current = path.get(i);
+            if (current.word != null || current.keys.length > 0) {
+                break;
+            }
+            path.get(i - 1).removeChild(word.charAt(i - 1));
+        }
+    }
+
+    /**
+     * Finds every word within a maximum edit distance of the query.
+     * @param query The word to search for.
+     * @param maxDistance The highest edit distance a match may have.
+     * @param matches Receives every matching word and its distance to the query.
+     */
+    public void search(String query, int maxDistance, BiConsumer<String, Integer> matches) {
+        int[] firstRow = new int[query.length() + 1];
+        for (int j = 0; j < firstRow.length; j++) {
+            firstRow[j] = j;
+        }
+        if (root.word != null && firstRow[query.length()] <= maxDistance) {
+            matches.accept(root.word, firstRow[query.length()]);
+        }
+
+        for (int i = 0; i < root.keys.length; i++) {
+            search(root.children[i], root.keys[i], query, firstRow, maxDistance, matches);
+        }
+    }
+
+    private void search(Node node, char key, String query, int[] previousRow, int maxDistance,
+                        BiConsumer<String, Integer> matches) {
+        int columns = query.length() + 1;
+        int[] row = new int[columns];
+        row[0] = previousRow[0] + 1;
+        int rowMinimum = row[0];
+
+        for (int j = 1; j < columns; j++) {
+            int replaceCost = query.charAt(j - 1) == key ? 0 : 1;
+            row[j] = Math.min(Math.min(row[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + replaceCost);
+            rowMinimum = Math.min(rowMinimum, row[j]);
+        }
+
+        if (node.word != null && row[query.length()] <= maxDistance) {
+            matches.accept(node.word, row[query.length()]);
+        }
+
+        // Every word further down this branch is at least rowMinimum edits away.
+        if (rowMinimum <= maxDistance) {
+            for (int i = 0; i < node.keys.length; i++) {
+                search(node.children[i], node.keys[i], query, row, maxDistance, matches);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package BLL.Util;
+
+import BE.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Searches a list of songs without an index, by splitting it across the cores of the machine.
+ * The workers look up the folded fields of the songs (see SearchKey) the first time they search their part of a library,
+ * and keep them for that library, so later searches only compare strings and don't allocate.
+ * The result keeps the order of the library.
+ */
+public class ParallelSongSearcher {
+    // Lists shorter than this are searched by one worker, as splitting them costs more than it saves.
+    private static final int SPLIT_THRESHOLD = 8192;
+
+    private final ForkJoinPool pool;
+
+    // The library the keys are for, and the keys of its songs, which are null until a worker looks them up.
+    private List<Song> keyedLibrary;
+    private SearchKey[] keys;
+
+    public ParallelSongSearcher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool The pool the search is split across.
+     */
+    public ParallelSongSearcher(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Filter a list of songs using a search query, in parallel.
+     * @param library, the list of all songs. Searching the same list again reuses its keys.
+     * @param query, the string input used to filter
+     * @param keyOf, gives the key of a song, e.g. SongSearcher::keyOf, so the songs aren't folded again
+     * @return a list of songs matching the query in either title, artist or category, in the order of the library
+     */
+    public List<Song> search(List<Song> library, String query, Function<Song, SearchKey> keyOf) {
+        SearchKey[] songs = keysOf(library);
+        int[] matches = pool.invoke(new SearchTask(library, songs, keyOf, SearchKey.fold(query), 0, songs.length));
+
+        List<Song> searchResult = new ArrayList<>(matches.length);
+        for (int index : matches) {
+            searchResult.add(library.get(index));
+        }
+        return searchResult;
+    }
+
+    /**
+     * Returns the keys of the songs in the library, starting over with none looked up if the library has changed.
+     * The library snapshots from SongLibraryCache are replaced on every change, so comparing them by identity is enough.
+     */
+    private synchronized SearchKey[] keysOf(List<Song> library) {
+        if (library != keyedLibrary) {
+            keys = new SearchKey[library.size()];
+            keyedLibrary = library;
+        }
+        return keys;
+    }
+
+    /**
+     * Finds the indexes of the matching songs in a range, splitting the range in two until it is below the threshold.
+     */
+    private static class SearchTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Song> library;
+        private final SearchKey[] songs;
+        private final Function<Song, SearchKey> keyOf;
+        private final String foldedQuery;
+        private final int from;
+        private final int to;
+
+        private SearchTask(List<Song> library, SearchKey[] songs, Function<Song, SearchKey> keyOf,
+                           String foldedQuery, int from, int to) {
+            this.library = library;
+            this.songs = songs;
+            this.keyOf = keyOf;
+            this.foldedQuery = foldedQuery;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                int[] matches = new int[16];
+                int amount = 0;
+                for (int i = from; i < to; i++) {
+                    SearchKey key = songs[i];
+                    // Two searches may look up the same key at the same time, which is harmless, as SearchKey is immutable.
+                    if (key == null) {
+                        key = keyOf.apply(library.get(i));
+                        songs[i] = key;
+                    }
+                    if (key.contains(foldedQuery)) {
+                        if (amount == matches.length) {
+                            matches = Arrays.copyOf(matches, amount * 2);
+                        }
+                        matches[amount++] = i;
+                    }
+                }
+                return Arrays.copyOf(matches, amount);
+            }
+
+            int middle = (from + to) >>> 1;
+            SearchTask left = new SearchTask(library, songs, keyOf, foldedQuery, from, middle);
+            SearchTask right = new SearchTask(library, songs, keyOf, foldedQuery, middle, to);
+            left.fork();
+            int[] rightMatches = right.compute();
+            int[] leftMatches = left.join();
+
+            // The left half comes first, so the matches stay in the order of the library.
+            int[] matches = Arrays.copyOf(leftMatches, leftMatches.length + rightMatches.length);
+            System.arraycopy(rightMatches, 0, matches, leftMatches.length, rightMatches.length);
+            return matches;
+        }
+    }
+}
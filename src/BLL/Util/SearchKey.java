@@ -0,0 +1,103 @@
+package BLL.Util;
+
+import BE.Song;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Folds text into the form it is searched in, so "Beyonce" finds "Beyoncé" and "ＡＢＢＡ" finds "ABBA".
+ * The text is decomposed (NFKD), the accents are stripped, and the case is folded the same way in every locale.
+ * Songs are folded once when they are indexed, and queries once per search, so searching compares the folded forms only.
+ * <p>
+ * A SearchKey object is the folded title, artist and genre of one song. SongSearcher makes one per song
+ * whenever the song is indexed, and every index shares it, so a song is only folded once and only kept once.
+ * The key is never changed, so an index can still find what a song was indexed under after the song has changed.
+ */
+public class SearchKey {
+    private final Song song;
+    private final String title;
+    private final String artist;
+    private final String genre;
+
+    /**
+     * Folds the title, artist and genre of a song.
+     * @param song The song.
+     */
+    public SearchKey(Song song) {
+        this.song = song;
+        this.title = fold(song.getTitle());
+        this.artist = fold(song.getArtist());
+        this.genre = fold(song.getGenre());
+    }
+
+    public Song getSong() {
+        return song;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    /**
+     * Checks if the title, artist or genre contains a query.
+     * @param foldedQuery The query, folded with fold.
+     * @return true if any of the fields contains the query.
+     */
+    public boolean contains(String foldedQuery) {
+        return title.contains(foldedQuery) || artist.contains(foldedQuery) || genre.contains(foldedQuery);
+    }
+
+    /**
+     * Folds a text for searching.
+     * @param text The text to fold.
+     * @return The folded text, or an empty string if the text is null.
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        // Most titles are plain ASCII, which only needs the case folded, if anything.
+        boolean hasUpperCase = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                return foldUnicode(text);
+            }
+            if (c >= 'A' && c <= 'Z') {
+                hasUpperCase = true;
+            }
+        }
+        return hasUpperCase ? text.toLowerCase(Locale.ROOT) : text;
+    }
+
+    /**
+     * Helper method to fold, for text that isn't plain ASCII.
+     */
+    private static String foldUnicode(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+
+        StringBuilder stripped = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            // The accents are separate marks after decomposing.
+            if (type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK
+                    && type != Character.ENCLOSING_MARK) {
+                stripped.append(c);
+            }
+        }
+
+        // Upper casing first folds letters like ß to ss, which lower casing alone leaves alone.
+        return stripped.toString().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,15 @@
+package BLL.Util;
+
+/**
+ * How SongManager searches the library.
+ */
+public enum SearchMode {
+    /**
+     * Uses the trigram index, and narrows the previous result while the user types.
+     */
+    INDEXED,
+    /**
+     * Compares every song to the query, split across all cores. For libraries that change too often to index.
+     */
+    PARALLEL
+}
@@ -0,0 +1,77 @@
+package BLL.Util;
+
+import BE.Song;
+
+import java.util.List;
+
+/**
+ * Remembers the last query and its results, for searching as the user types.
+ * When a query contains the previous query, e.g. "beatl" after "beat", it can only match songs
+ * the previous query matched, so only those are filtered instead of searching the whole library.
+ */
+public class SearchSession {
+    private final SongLibraryCache libraryCache;
+    private final SongSearcher songSearcher;
+
+    private String lastQuery;
+    private List<Song> lastResult;
+    // The library the last result was found in. When the library changes, the result is thrown away.
+    private List<Song> lastLibrary;
+
+    private long refinedSearches;
+    private long fullSearches;
+
+    public SearchSession(SongLibraryCache libraryCache, SongSearcher songSearcher) {
+        this.libraryCache = libraryCache;
+        this.songSearcher = songSearcher;
+    }
+
+    /**
+     * Filter the library using a search query, narrowing the previous result if possible.
+     * @param query, the string input used to filter
+     * @return a list of songs matching the query in either title, artist or category
+     * @throws Exception If it fails to read the library.
+     */
+    public synchronized List<Song> search(String query) throws Exception {
+        List<Song> library = libraryCache.getSongs();
+        String foldedQuery = SearchKey.fold(query);
+
+        List<Song> result;
+        if (lastResult != null && library == lastLibrary && foldedQuery.contains(lastQuery)) {
+            result = foldedQuery.equals(lastQuery) ? lastResult : songSearcher.filter(lastResult, query);
+            refinedSearches++;
+        }
+        else {
+            result = songSearcher.search(query);
+            fullSearches++;
+        }
+
+        lastQuery = foldedQuery;
+        lastResult = result;
+        lastLibrary = library;
+        return result;
+    }
+
+    /**
+     * Forgets the last query, so the next search goes through the whole library.
+     */
+    public synchronized void reset() {
+        lastQuery = null;
+        lastResult = null;
+        lastLibrary = null;
+    }
+
+    /**
+     * The number of searches that only had to filter the previous result.
+     */
+    public synchronized long getRefinedSearches() {
+        return refinedSearches;
+    }
+
+    /**
+     * The number of searches that went through the whole library.
+     */
+    public synchronized long getFullSearches() {
+        return fullSearches;
+    }
+}
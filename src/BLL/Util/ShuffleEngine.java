@@ -0,0 +1,267 @@
+package BLL.Util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Shuffles items without repeats: every item is given once before any item is given again.
+ * The order is a Fisher–Yates shuffle that is drawn lazily, one item per call to next,
+ * so starting a shuffle costs nothing and next and previous take constant time.
+ * <p>
+ * The items are kept in one list: the items played in this cycle come first, in the order they were played,
+ * followed by the items that haven't been played yet, in no particular order.
+ * Next swaps a random unplayed item to the end of the played items, and previous steps back through them.
+ * Items can be added and removed during a cycle. An added item is simply one more unplayed item,
+ * and a removed item that has been played leaves a gap, which is skipped and cleaned up later.
+ * <p>
+ * The same seed and the same calls give the same order, so a shuffle can be reproduced.
+ * @param <T> The type of the items, e.g. Song. Items are told apart by equals, and an item added
+ *           more than once is still only given once per cycle.
+ */
+public class ShuffleEngine<T> {
+
+    /**
+     * Where an item is in the order, and how many times it has been added.
+     */
+    private static class Slot {
+        private int position;
+        private int copies = 1;
+
+        private Slot(int position) {
+            this.position = position;
+        }
+    }
+
+    private final List<T> order = new ArrayList<>();
+    private final Map<T, Slot> slots = new HashMap<>();
+    private long seed;
+    private Random random;
+    // The items before this position have been played in this cycle.
+    private int drawn;
+    // The position of the current item, which is below drawn. It is -1 before the first item.
+    private int cursor = -1;
+    // The number of gaps left by removed items among the played items.
+    private int gaps;
+
+    /**
+     * Creates an engine with a random seed.
+     */
+    public ShuffleEngine() {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * @param seed The seed of the shuffle. The same seed gives the same order.
+     */
+    public ShuffleEngine(long seed) {
+        setSeed(seed);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed and starts a new cycle, so the order from here on can be reproduced with the same seed.
+     * @param seed The new seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        startCycle();
+    }
+
+    /**
+     * Replaces the items and starts a new cycle over them.
+     * @param items The items to shuffle.
+     */
+    public void reset(Collection<? extends T> items) {
+        order.clear();
+        slots.clear();
+        drawn = 0;
+        cursor = -1;
+        gaps = 0;
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item. It will be given before the cycle ends.
+     * @param item The item to add.
+     */
+    public void add(T item) {
+        Slot slot = slots.get(item);
+        if (slot != null) {
+            slot.copies++;
+            return;
+        }
+        slots.put(item, new Slot(order.size()));
+        order.add(item);
+    }
+
+    /**
+     * Removes one copy of an item. When the last copy is removed, the item is no longer given.
+     * @param item The item to remove.
+     */
+    public void remove(T item) {
+        Slot slot = slots.get(item);
+        if (slot == null || --slot.copies > 0) {
+            return;
+        }
+        slots.remove(item);
+
+        int position = slot.position;
+        if (position >= drawn) {
+            // The unplayed items have no order, so the last item can take its place.
+            moveLastTo(position);
+        }
+        else {
+            // The played items keep their order for previous, so a gap is left.
+            order.set(position, null);
+            gaps++;
+            if (gaps > drawn / 2) {
+                closeGaps();
+            }
+        }
+    }
+
+    /**
+     * Makes an item the current one, e.g. when the user picks a song themselves.
+     * It counts as played in this cycle, and next continues the shuffle from it.
+     * @param item The item. Nothing happens if it isn't in the engine.
+     */
+    public void setCurrent(T item) {
+        Slot slot = slots.get(item);
+        if (slot == null) {
+            return;
+        }
+        if (slot.position < drawn) {
+            cursor = slot.position;
+        }
+        else {
+            swap(slot.position, drawn);
+            cursor = drawn++;
+        }
+    }
+
+    /**
+     * Gives the next item. If the user has gone back with previous, it goes forward through the items played again.
+     * Otherwise it draws a random item that hasn't been played in this cycle,
+     * and starts a new cycle when every item has been played.
+     * @return The next item, or null if there are no items.
+     */
+    public T next() {
+        // Going forward through items that were played before.
+        for (int position = cursor + 1; position < drawn; position++) {
+            if (order.get(position) != null) {
+                cursor = position;
+                return order.get(position);
+            }
+        }
+
+        int bound = order.size();
+        if (drawn == order.size()) {
+            if (slots.isEmpty()) {
+                return null;
+            }
+            T lastItem = cursor >= 0 ? order.get(cursor) : null;
+            startCycle();
+            bound = order.size();
+            // The last item of the cycle is left out of the first draw of the next one, so it isn't given twice in a row.
+            if (lastItem != null && bound > 1) {
+                swap(slots.get(lastItem).position, bound - 1);
+                bound--;
+            }
+        }
+
+        swap(drawn + random.nextInt(bound - drawn), drawn);
+        cursor = drawn++;
+        return order.get(cursor);
+    }
+
+    /**
+     * Gives the item played before the current one in this cycle.
+     * @return The previous item, or null if the current item is the first one in this cycle.
+     */
+    public T previous() {
+        for (int position = cursor - 1; position >= 0; position--) {
+            if (order.get(position) != null) {
+                cursor = position;
+                return order.get(position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of different items.
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Marks every item as unplayed again.
+     */
+    private void startCycle() {
+        closeGaps();
+        drawn = 0;
+        cursor = -1;
+    }
+
+    /**
+     * Removes the gaps among the played items, keeping their order.
+     */
+    private void closeGaps() {
+        if (gaps == 0) {
+            return;
+        }
+        int kept = 0;
+        int newDrawn = 0;
+        // If the current item was removed, the item played before it becomes the current one.
+        int newCursor = -1;
+        for (int position = 0; position < order.size(); position++) {
+            T item = order.get(position);
+            if (item == null) {
+                continue;
+            }
+            if (position < drawn) {
+                newDrawn = kept + 1;
+            }
+            if (position <= cursor) {
+                newCursor = kept;
+            }
+            order.set(kept, item);
+            slots.get(item).position = kept++;
+        }
+        drawn = newDrawn;
+        cursor = newCursor;
+        order.subList(kept, order.size()).clear();
+        gaps = 0;
+    }
+
+    private void moveLastTo(int position) {
+        T last = order.remove(order.size() - 1);
+        if (position < order.size()) {
+            order.set(position, last);
+            slots.get(last).position = position;
+        }
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) {
+            return;
+        }
+        T first = order.get(i);
+        T second = order.get(j);
+        order.set(i, second);
+        order.set(j, first);
+        slots.get(first).position = j;
+        slots.get(second).position = i;
+    }
+}
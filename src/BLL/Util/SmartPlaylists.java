@@ -0,0 +1,248 @@
+package BLL.Util;
+
+import BE.PlayList;
+import BE.PlayQueue;
+import BE.Song;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the songs of smart playlists up to date with the library.
+ * A smart playlist holds the songs matching its rule, written in the search language
+ * (see SongQueryParser), ordered by id, so the most recently added songs come last.
+ * The rule is run against the whole library once, when the playlist is watched.
+ * After that, a change to a song only checks that song against each rule, plus the few songs
+ * at the edge of an added:n rule, so the cost of a change doesn't grow with the library.
+ * <p>
+ * The library changes on background threads, while the GUI reads the PlayList objects on the JavaFX thread.
+ * So the songs matching each rule are worked out in a copy kept here, and the PlayList objects are only changed
+ * on the executor given to applyChangesOn. A change there brings a song, or the whole playlist, in line
+ * with the copy as it is when the change runs, so the changes may run late and in any order.
+ */
+public class SmartPlaylists {
+
+    /**
+     * A watched playlist with its parsed rule.
+     */
+    private static class WatchedPlaylist {
+        private final PlayList playList;
+        private final SongQuery rule;
+        // The songs matching the rule, ordered by id. The songs of the PlayList follow these on the executor.
+        private final List<Song> songs = new PlayQueue<>();
+
+        private WatchedPlaylist(PlayList playList) {
+            this.playList = playList;
+            this.rule = SongQueryParser.parse(playList.getSmartRule());
+        }
+    }
+
+    private final SongQueryIndex index;
+    private final List<WatchedPlaylist> watchedPlaylists = new ArrayList<>();
+    private Executor executor = Runnable::run;
+    private Runnable onChanged = () -> {};
+
+    /**
+     * @param index The index of the library, kept up to date before the changes are passed on to this.
+     */
+    public SmartPlaylists(SongQueryIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Chooses where the PlayList objects are changed. Until this is called, they are changed on the calling thread.
+     * @param executor Runs the changes, e.g. on the JavaFX thread.
+     * @param onChanged Runs on the executor after the songs of one or more smart playlists have changed.
+     */
+    public synchronized void applyChangesOn(Executor executor, Runnable onChanged) {
+        this.executor = executor;
+        this.onChanged = onChanged;
+    }
+
+    /**
+     * Starts keeping a smart playlist up to date, and fills it with the songs matching its rule on the executor.
+     * A playlist with the same id that was watched before is replaced, e.g. after its rule has changed.
+     * @param playList The smart playlist.
+     */
+    public synchronized void watch(PlayList playList) {
+        unwatch(playList);
+
+        WatchedPlaylist watched = new WatchedPlaylist(playList);
+        watchedPlaylists.add(watched);
+        List<Runnable> changes = new ArrayList<>();
+        fill(watched, changes);
+        publish(changes);
+    }
+
+    /**
+     * Stops keeping a playlist up to date, e.g. when it is deleted.
+     * @param playList The playlist.
+     */
+    public synchronized void unwatch(PlayList playList) {
+        watchedPlaylists.removeIf(watched -> watched.playList.getPlayListId() == playList.getPlayListId());
+    }
+
+    /**
+     * Runs every rule against the whole library again, after the library has been replaced.
+     */
+    public synchronized void refillAll() {
+        List<Runnable> changes = new ArrayList<>();
+        for (WatchedPlaylist watched : watchedPlaylists) {
+            fill(watched, changes);
+        }
+        publish(changes);
+    }
+
+    /**
+     * Adds a new or changed song to the playlists it now matches, and removes it from the ones it no longer matches.
+     * @param song The song, already changed in the index.
+     */
+    public synchronized void songChanged(Song song) {
+        List<Runnable> changes = new ArrayList<>();
+        for (WatchedPlaylist watched : watchedPlaylists) {
+            check(watched, song.getId(), changes);
+            checkEdgeSongs(watched, changes);
+        }
+        publish(changes);
+    }
+
+    /**
+     * Removes a deleted song from the playlists.
+     * @param songId The id of the song, already removed from the index.
+     */
+    public synchronized void songRemoved(int songId) {
+        List<Runnable> changes = new ArrayList<>();
+        for (WatchedPlaylist watched : watchedPlaylists) {
+            int position = positionOf(watched.songs, songId);
+            if (position >= 0) {
+                watched.songs.remove(position);
+                changes.add(() -> applySong(watched, songId));
+            }
+            checkEdgeSongs(watched, changes);
+        }
+        publish(changes);
+    }
+
+    private void fill(WatchedPlaylist watched, List<Runnable> changes) {
+        watched.songs.clear();
+        watched.songs.addAll(index.search(watched.rule));
+        changes.add(() -> applyAll(watched));
+    }
+
+    /**
+     * Checks the songs whose match depends on the rest of the library.
+     */
+    private void checkEdgeSongs(WatchedPlaylist watched, List<Runnable> changes) {
+        BitSet edgeSongs = index.edgeSongs(watched.rule);
+        for (int id = edgeSongs.nextSetBit(0); id >= 0; id = edgeSongs.nextSetBit(id + 1)) {
+            check(watched, id, changes);
+        }
+    }
+
+    /**
+     * Adds or removes a single song, so the playlist has it exactly when it matches the rule.
+     */
+    private void check(WatchedPlaylist watched, int songId, List<Runnable> changes) {
+        int position = positionOf(watched.songs, songId);
+        Song matchingSong = index.matchingSong(watched.rule, songId);
+
+        if (matchingSong != null && position < 0) {
+            watched.songs.add(-position - 1, matchingSong);
+            changes.add(() -> applySong(watched, songId));
+        }
+        else if (matchingSong == null && position >= 0) {
+            watched.songs.remove(position);
+            changes.add(() -> applySong(watched, songId));
+        }
+        else if (matchingSong != null && watched.songs.get(position) != matchingSong) {
+            // An updated song is a new Song object, which replaces the old one.
+            watched.songs.set(position, matchingSong);
+            changes.add(() -> applySong(watched, songId));
+        }
+    }
+
+    /**
+     * Runs the changes to the PlayList objects on the executor, followed by onChanged.
+     */
+    private void publish(List<Runnable> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Runnable listener = onChanged;
+        executor.execute(() -> {
+            for (Runnable change : changes) {
+                change.run();
+            }
+            listener.run();
+        });
+    }
+
+    /**
+     * Replaces the songs of the PlayList with the matching songs. Runs on the executor.
+     */
+    private void applyAll(WatchedPlaylist watched) {
+        List<Song> matchingSongs;
+        synchronized (this) {
+            // The playlist has been unwatched or watched again since the change was made.
+            if (!watchedPlaylists.contains(watched)) {
+                return;
+            }
+            matchingSongs = new ArrayList<>(watched.songs);
+        }
+
+        List<Song> songs = watched.playList.getAllSongsInPlaylist();
+        songs.clear();
+        songs.addAll(matchingSongs);
+    }
+
+    /**
+     * Adds, replaces or removes a single song of the PlayList, so it has the song exactly when it matches. Runs on the executor.
+     */
+    private void applySong(WatchedPlaylist watched, int songId) {
+        Song matchingSong;
+        synchronized (this) {
+            if (!watchedPlaylists.contains(watched)) {
+                return;
+            }
+            int position = positionOf(watched.songs, songId);
+            matchingSong = position >= 0 ? watched.songs.get(position) : null;
+        }
+
+        List<Song> songs = watched.playList.getAllSongsInPlaylist();
+        int position = positionOf(songs, songId);
+        if (matchingSong != null && position < 0) {
+            songs.add(-position - 1, matchingSong);
+        }
+        else if (matchingSong != null) {
+            songs.set(position, matchingSong);
+        }
+        else if (position >= 0) {
+            songs.remove(position);
+        }
+    }
+
+    /**
+     * Binary searches the songs of a smart playlist, which are ordered by id.
+     * @return The position of the song, or (-(insertion point) - 1) if it isn't in the playlist.
+     */
+    private static int positionOf(List<Song> songs, int songId) {
+        int low = 0;
+        int high = songs.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = songs.get(middle).getId();
+            if (middleId < songId) {
+                low = middle + 1;
+            }
+            else if (middleId > songId) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,295 @@
+package BLL.Util;
+
+import BE.Song;
+import DAL.Interfaces.ISongDAO;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps all songs in the library in memory, so searching doesn't read every song from the database.
+ * The songs are read once, and after that the cache is kept up to date by the changes made
+ * through it. Changes made outside this program are picked up by a reload.
+ * Readers get an unmodifiable snapshot, so searches never wait for a change or a reload.
+ * <p>
+ * The snapshot is split into chunks of up to CHUNK_SIZE songs. A change copies only the chunk the song is in
+ * and the array of chunks, and the chunk of each song is found through its id, so a change costs about
+ * CHUNK_SIZE + n / CHUNK_SIZE instead of copying and scanning the whole library.
+ */
+public class SongLibraryCache {
+    private static final int CHUNK_SIZE = 512;
+
+    /**
+     * An unmodifiable list of songs made of chunks. A new snapshot shares every chunk that didn't change with the old one.
+     */
+    private static class Snapshot extends AbstractList<Song> implements RandomAccess {
+        private static final Snapshot EMPTY = new Snapshot(new Song[0][]);
+
+        private final Song[][] chunks;
+        // The position of the first song of each chunk.
+        private final int[] starts;
+        private final int size;
+
+        private Snapshot(Song[][] chunks) {
+            this.chunks = chunks;
+            this.starts = new int[chunks.length];
+            int position = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                starts[i] = position;
+                position += chunks[i].length;
+            }
+            this.size = position;
+        }
+
+        @Override
+        public Song get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            // The last chunk starting at or before the index. An empty chunk starts where the next one does,
+            // so the chunk found is never empty.
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+            return chunks[low][index - starts[low]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns a snapshot with one chunk replaced. A chunk that becomes empty is kept,
+         * so the chunks after it keep their place, until the next reload.
+         */
+        private Snapshot withChunk(int chunk, Song[] songs) {
+            Song[][] newChunks = chunks.clone();
+            newChunks[chunk] = songs;
+            return new Snapshot(newChunks);
+        }
+    }
+
+    private final ISongDAO songDAO;
+    private final SongSearcher songSearcher;
+    private final long reloadIntervalMillis;
+
+    // Replaced, never changed, so it can be read without locking.
+    private volatile Snapshot songs;
+    private volatile long loadedAt;
+    // The chunk of each cached song by its id. Only used by changes, under the lock.
+    private final Map<Integer, Integer> chunkOfSong = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong writesSinceReload = new AtomicLong();
+
+    private ScheduledExecutorService reloader;
+
+    /**
+     * @param songDAO The DAO the songs are read from.
+     * @param songSearcher The searcher whose index is kept up to date with the cached songs.
+     * @param reloadIntervalMillis How old the songs may get before they count as stale.
+     */
+    public SongLibraryCache(ISongDAO songDAO, SongSearcher songSearcher, long reloadIntervalMillis) {
+        this.songDAO = songDAO;
+        this.songSearcher = songSearcher;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+    }
+
+    /**
+     * Returns all songs, reading them from the database the first time.
+     * @return An unmodifiable list of all songs.
+     * @throws Exception If it fails to read the songs.
+     */
+    public List<Song> getSongs() throws Exception {
+        List<Song> snapshot = songs;
+        if (snapshot != null) {
+            hits.incrementAndGet();
+            return snapshot;
+        }
+
+        synchronized (this) {
+            if (songs == null) {
+                misses.incrementAndGet();
+                load();
+            }
+            else {
+                hits.incrementAndGet();
+            }
+            return songs;
+        }
+    }
+
+    /**
+     * Reads all songs from the database again, replacing the cached songs.
+     * Changes through the cache wait until the reload is done, so none of them are lost.
+     * @throws Exception If it fails to read the songs. The cached songs are kept in that case.
+     */
+    public synchronized void reload() throws Exception {
+        load();
+        reloads.incrementAndGet();
+    }
+
+    private void load() throws Exception {
+        List<Song> allSongs = songDAO.getAllSongs();
+        chunkOfSong.clear();
+        Snapshot snapshot = append(Snapshot.EMPTY, allSongs);
+        songSearcher.index(snapshot);
+        songs = snapshot;
+        loadedAt = System.currentTimeMillis();
+        writesSinceReload.set(0);
+    }
+
+    /**
+     * Returns a snapshot with songs added at the end. The last chunk is filled up first, then new chunks are added.
+     */
+    private Snapshot append(Snapshot snapshot, Collection<Song> newSongs) {
+        List<Song[]> chunks = new ArrayList<>(Arrays.asList(snapshot.chunks));
+        List<Song> pending = new ArrayList<>(newSongs);
+        int start = 0;
+
+        if (!chunks.isEmpty() && chunks.get(chunks.size() - 1).length < CHUNK_SIZE && !pending.isEmpty()) {
+            Song[] last = chunks.get(chunks.size() - 1);
+            int amount = Math.min(CHUNK_SIZE - last.length, pending.size());
+            Song[] filled = Arrays.copyOf(last, last.length + amount);
+            for (int i = 0; i < amount; i++) {
+                filled[last.length + i] = pending.get(i);
+                chunkOfSong.put(pending.get(i).getId(), chunks.size() - 1);
+            }
+            chunks.set(chunks.size() - 1, filled);
+            start = amount;
+        }
+
+        while (start < pending.size()) {
+            int amount = Math.min(CHUNK_SIZE, pending.size() - start);
+            Song[] chunk = pending.subList(start, start + amount).toArray(new Song[0]);
+            for (Song song : chunk) {
+                chunkOfSong.put(song.getId(), chunks.size());
+            }
+            chunks.add(chunk);
+            start += amount;
+        }
+        return new Snapshot(chunks.toArray(new Song[0][]));
+    }
+
+    /**
+     * Reloads the songs in the background every reload interval.
+     * A failed reload is logged, and the cached songs are kept until the next one.
+     */
+    public synchronized void startPeriodicReload() {
+        if (reloader != null) {
+            return;
+        }
+
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SongLibraryCache-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds newly created songs to the cache.
+     * @param newSongs The songs that were created.
+     */
+    public synchronized void addAll(Collection<Song> newSongs) {
+        if (songs == null) {
+            return;
+        }
+
+        replace(append(songs, newSongs));
+
+        for (Song song : newSongs) {
+            songSearcher.add(song);
+        }
+    }
+
+    /**
+     * Replaces the cached song with the same id as an updated song.
+     * @param song The updated song.
+     */
+    public synchronized void update(Song song) {
+        if (songs == null) {
+            return;
+        }
+
+        Integer chunk = chunkOfSong.get(song.getId());
+        if (chunk != null) {
+            Song[] updated = songs.chunks[chunk].clone();
+            updated[indexInChunk(updated, song.getId())] = song;
+            replace(songs.withChunk(chunk, updated));
+        }
+        songSearcher.update(song);
+    }
+
+    /**
+     * Removes a deleted song from the cache.
+     * @param song The song that was deleted.
+     */
+    public synchronized void remove(Song song) {
+        if (songs == null) {
+            return;
+        }
+
+        Integer chunk = chunkOfSong.remove(song.getId());
+        if (chunk != null) {
+            Song[] old = songs.chunks[chunk];
+            int index = indexInChunk(old, song.getId());
+            Song[] updated = new Song[old.length - 1];
+            System.arraycopy(old, 0, updated, 0, index);
+            System.arraycopy(old, index + 1, updated, index, old.length - index - 1);
+            replace(songs.withChunk(chunk, updated));
+        }
+        songSearcher.remove(song);
+    }
+
+    private static int indexInChunk(Song[] chunk, int songId) {
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i].getId() == songId) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Song " + songId + " is missing from its chunk");
+    }
+
+    private void replace(Snapshot updated) {
+        songs = updated;
+        writesSinceReload.incrementAndGet();
+    }
+
+    public CacheStatistics getStatistics() {
+        List<Song> snapshot = songs;
+        long ageMillis = snapshot == null ? -1 : System.currentTimeMillis() - loadedAt;
+
+        return new CacheStatistics(snapshot == null ? 0 : snapshot.size(), hits.get(), misses.get(), reloads.get(),
+                writesSinceReload.get(), ageMillis, ageMillis > reloadIntervalMillis);
+    }
+}
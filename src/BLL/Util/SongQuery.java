@@ -0,0 +1,369 @@
+package BLL.Util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed search query, as a tree of conditions. Made by SongQueryParser and run by SongQueryIndex.
+ * Every condition can estimate how many songs it matches, find its matches with an index,
+ * and check a single song. An AND runs its most selective condition first, and the conditions after
+ * it only check the songs that are left once that is cheaper than using their own index.
+ */
+public abstract class SongQuery {
+    /**
+     * Estimates how many songs match, without finding them.
+     */
+    abstract int estimate(SongQueryIndex index);
+
+    /**
+     * Checks if a single song matches.
+     */
+    abstract boolean matches(SongQueryIndex index, int songId);
+
+    /**
+     * Finds the matching songs with an index.
+     * @return The ids of the matching songs. The caller may change the returned set.
+     */
+    abstract BitSet lookup(SongQueryIndex index);
+
+    /**
+     * Finds the matching songs among the candidates, either by checking each candidate
+     * or by using the index, depending on which touches fewer songs.
+     * @param candidates The ids of the songs to choose from, or null for all songs.
+     * @return The ids of the matching candidates.
+     */
+    BitSet evaluate(SongQueryIndex index, BitSet candidates) {
+        if (candidates == null) {
+            return lookup(index);
+        }
+        if (candidates.cardinality() < estimate(index)) {
+            return filter(index, candidates);
+        }
+        BitSet result = lookup(index);
+        result.and(candidates);
+        return result;
+    }
+
+    /**
+     * Adds the songs whose match depends on the other songs in the library, and may change
+     * when any song is added or removed. Most conditions only depend on the song itself, so none by default.
+     */
+    void addEdgeSongs(SongQueryIndex index, BitSet songIds) {
+    }
+
+    BitSet filter(SongQueryIndex index, BitSet candidates) {
+        BitSet result = new BitSet();
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            if (matches(index, id)) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Matches songs that match all of the conditions. With no conditions, it matches every song.
+     */
+    public static class And extends SongQuery {
+        private final List<SongQuery> conditions;
+
+        public And(List<SongQuery> conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            int estimate = index.size();
+            for (SongQuery condition : conditions) {
+                estimate = Math.min(estimate, condition.estimate(index));
+            }
+            return estimate;
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            for (SongQuery condition : conditions) {
+                if (!condition.matches(index, songId)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return evaluate(index, null);
+        }
+
+        @Override
+        BitSet evaluate(SongQueryIndex index, BitSet candidates) {
+            // The most selective condition first, so the candidates shrink as fast as possible.
+            Map<SongQuery, Integer> estimates = new IdentityHashMap<>();
+            for (SongQuery condition : conditions) {
+                estimates.put(condition, condition.estimate(index));
+            }
+            List<SongQuery> planned = new ArrayList<>(conditions);
+            planned.sort(Comparator.comparingInt(estimates::get));
+
+            BitSet result = candidates;
+            for (SongQuery condition : planned) {
+                result = condition.evaluate(index, result);
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            if (result == null) {
+                return index.allIds();
+            }
+            return result == candidates ? (BitSet) candidates.clone() : result;
+        }
+
+        @Override
+        void addEdgeSongs(SongQueryIndex index, BitSet songIds) {
+            for (SongQuery condition : conditions) {
+                condition.addEdgeSongs(index, songIds);
+            }
+        }
+    }
+
+    /**
+     * Matches songs that match at least one of the conditions.
+     */
+    public static class Or extends SongQuery {
+        private final List<SongQuery> conditions;
+
+        public Or(List<SongQuery> conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            long estimate = 0;
+            for (SongQuery condition : conditions) {
+                estimate += condition.estimate(index);
+            }
+            return (int) Math.min(estimate, index.size());
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            for (SongQuery condition : conditions) {
+                if (condition.matches(index, songId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return evaluate(index, null);
+        }
+
+        @Override
+        BitSet evaluate(SongQueryIndex index, BitSet candidates) {
+            BitSet result = new BitSet();
+            for (SongQuery condition : conditions) {
+                result.or(condition.evaluate(index, candidates));
+            }
+            return result;
+        }
+
+        @Override
+        void addEdgeSongs(SongQueryIndex index, BitSet songIds) {
+            for (SongQuery condition : conditions) {
+                condition.addEdgeSongs(index, songIds);
+            }
+        }
+    }
+
+    /**
+     * Matches songs that don't match the condition.
+     */
+    public static class Not extends SongQuery {
+        private final SongQuery condition;
+
+        public Not(SongQuery condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            return Math.max(0, index.size() - condition.estimate(index));
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            return !condition.matches(index, songId);
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return evaluate(index, null);
+        }
+
+        @Override
+        BitSet evaluate(SongQueryIndex index, BitSet candidates) {
+            BitSet result = candidates == null ? index.allIds() : (BitSet) candidates.clone();
+            result.andNot(condition.evaluate(index, candidates));
+            return result;
+        }
+
+        @Override
+        void addEdgeSongs(SongQueryIndex index, BitSet songIds) {
+            condition.addEdgeSongs(index, songIds);
+        }
+    }
+
+    /**
+     * Matches songs where the title, the artist, the genre or any of them contains a text, ignoring case and accents.
+     */
+    public static class Contains extends SongQuery {
+        private final SongQueryIndex.Field field;
+        private final String foldedText;
+
+        /**
+         * @param field The field to search, or null for title, artist and genre.
+         * @param text The text to search for.
+         */
+        public Contains(SongQueryIndex.Field field, String text) {
+            this.field = field;
+            this.foldedText = SearchKey.fold(text);
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            int[] candidates = index.textCandidates(foldedText);
+            return candidates == null ? index.size() : candidates.length;
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            return index.contains(songId, field, foldedText);
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            int[] candidates = index.textCandidates(foldedText);
+            if (candidates == null) {
+                return filter(index, index.allIds());
+            }
+
+            BitSet result = new BitSet();
+            for (int id : candidates) {
+                if (matches(index, id)) {
+                    result.set(id);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Matches songs where the artist or the genre is exactly a value, ignoring case and accents.
+     */
+    public static class Equals extends SongQuery {
+        private final SongQueryIndex.Field field;
+        private final String foldedValue;
+
+        /**
+         * @param field ARTIST or GENRE.
+         * @param value The value to look for.
+         */
+        public Equals(SongQueryIndex.Field field, String value) {
+            this.field = field;
+            this.foldedValue = SearchKey.fold(value);
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            return index.lookupValue(field, foldedValue).cardinality();
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            return index.equals(songId, field, foldedValue);
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return (BitSet) index.lookupValue(field, foldedValue).clone();
+        }
+    }
+
+    /**
+     * Matches songs with a duration in a range.
+     */
+    public static class DurationBetween extends SongQuery {
+        private final int min;
+        private final int max;
+
+        /**
+         * @param min The shortest duration in seconds, included.
+         * @param max The longest duration in seconds, included.
+         */
+        public DurationBetween(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            return index.countDurationBetween(min, max);
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            int duration = index.duration(songId);
+            return duration >= min && duration <= max;
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return index.durationBetween(min, max);
+        }
+    }
+
+    /**
+     * Matches the songs added most recently. Songs get ascending ids, so these are the songs with the highest ids.
+     */
+    public static class RecentlyAdded extends SongQuery {
+        private final int amount;
+
+        /**
+         * @param amount The number of songs to match.
+         */
+        public RecentlyAdded(int amount) {
+            this.amount = amount;
+        }
+
+        @Override
+        int estimate(SongQueryIndex index) {
+            return Math.min(amount, index.size());
+        }
+
+        @Override
+        boolean matches(SongQueryIndex index, int songId) {
+            return index.isAmongNewest(songId, amount);
+        }
+
+        @Override
+        BitSet lookup(SongQueryIndex index) {
+            return index.newest(amount);
+        }
+
+        @Override
+        void addEdgeSongs(SongQueryIndex index, BitSet songIds) {
+            // Adding a song pushes the oldest of them out, and removing one of them lets the next one in.
+            for (int id : new int[] {index.nthNewest(amount), index.nthNewest(amount + 1)}) {
+                if (id >= 0) {
+                    songIds.set(id);
+                }
+            }
+        }
+    }
+}
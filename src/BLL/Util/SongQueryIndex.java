@@ -0,0 +1,333 @@
+package BLL.Util;
+
+import BE.Song;
+import DAL.Util.IntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The per field indexes used to run a SongQuery: a hash index on artist and on genre,
+ * the durations sorted for range lookups, and the trigram postings of a TrigramIndex for text.
+ * Sets of songs are kept as bit sets of their ids, so AND, OR and NOT are cheap.
+ */
+public class SongQueryIndex {
+    public enum Field { TITLE, ARTIST, GENRE }
+
+    private static final BitSet NO_SONGS = new BitSet();
+
+    /**
+     * A song with its shared SearchKey, and its duration when it was indexed.
+     */
+    private static class IndexedSong {
+        private final Song song;
+        private final SearchKey key;
+        private final int duration;
+
+        private IndexedSong(SearchKey key) {
+            this.song = key.getSong();
+            this.key = key;
+            this.duration = song.getTime();
+        }
+
+        private String field(Field field) {
+            return switch (field) {
+                case TITLE -> key.getTitle();
+                case ARTIST -> key.getArtist();
+                case GENRE -> key.getGenre();
+            };
+        }
+    }
+
+    private final TrigramIndex textIndex;
+    private final IntHashMap<IndexedSong> songs = new IntHashMap<>();
+    private final BitSet allIds = new BitSet();
+    private final Map<String, BitSet> byArtist = new HashMap<>();
+    private final Map<String, BitSet> byGenre = new HashMap<>();
+    // Sorted by duration and then id. Rebuilt on the next range lookup after a change.
+    private long[] durationsAndIds = new long[0];
+    private boolean durationsChanged;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param textIndex The trigram index of the same songs, used for text conditions.
+     */
+    public SongQueryIndex(TrigramIndex textIndex) {
+        this.textIndex = textIndex;
+    }
+
+    /**
+     * Replaces everything in the index with the given songs.
+     * @param allSongs The keys of the songs to index.
+     */
+    public void rebuild(Collection<SearchKey> allSongs) {
+        lock.writeLock().lock();
+        try {
+            songs.clear();
+            allIds.clear();
+            byArtist.clear();
+            byGenre.clear();
+            for (SearchKey key : allSongs) {
+                addIndexed(key);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a song, or re-indexes it if a song with the same id is already indexed.
+     * @param key The key of the song to add.
+     */
+    public void add(SearchKey key) {
+        lock.writeLock().lock();
+        try {
+            removeIndexed(key.getSong().getId());
+            addIndexed(key);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a song from the index.
+     * @param songId The id of the song to remove.
+     */
+    public void remove(int songId) {
+        lock.writeLock().lock();
+        try {
+            removeIndexed(songId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query against the indexed songs.
+     * @param query The parsed query.
+     * @return The matching songs, ordered by id.
+     */
+    public List<Song> search(SongQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = query.evaluate(this, null);
+
+            List<Song> searchResult = new ArrayList<>(matches.cardinality());
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                IndexedSong indexedSong = songs.get(id);
+                if (indexedSong != null) {
+                    searchResult.add(indexedSong.song);
+                }
+            }
+            return searchResult;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a single indexed song matches a query, e.g. after the song has changed.
+     * @param query The parsed query.
+     * @param songId The id of the song.
+     * @return The song if it matches, or null if it doesn't or isn't indexed.
+     */
+    Song matchingSong(SongQuery query, int songId) {
+        lock.readLock().lock();
+        try {
+            IndexedSong indexedSong = songs.get(songId);
+            return indexedSong != null && query.matches(this, songId) ? indexedSong.song : null;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the songs whose match of a query may have changed because another song was added or removed.
+     * @param query The parsed query.
+     * @return The ids of the songs.
+     */
+    BitSet edgeSongs(SongQuery query) {
+        lock.readLock().lock();
+        try {
+            BitSet songIds = new BitSet();
+            query.addEdgeSongs(this, songIds);
+            return songIds;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        return songs.size();
+    }
+
+    BitSet allIds() {
+        return (BitSet) allIds.clone();
+    }
+
+    int[] textCandidates(String foldedText) {
+        return textIndex.candidates(foldedText);
+    }
+
+    boolean contains(int songId, Field field, String foldedText) {
+        IndexedSong indexedSong = songs.get(songId);
+        if (indexedSong == null) {
+            return false;
+        }
+        if (field != null) {
+            return indexedSong.field(field).contains(foldedText);
+        }
+        return indexedSong.key.contains(foldedText);
+    }
+
+    boolean equals(int songId, Field field, String foldedValue) {
+        IndexedSong indexedSong = songs.get(songId);
+        return indexedSong != null && indexedSong.field(field).equals(foldedValue);
+    }
+
+    /**
+     * Returns the songs with exactly the value in a hash indexed field. The caller must not change the set.
+     */
+    BitSet lookupValue(Field field, String foldedValue) {
+        Map<String, BitSet> valueIndex = field == Field.GENRE ? byGenre : byArtist;
+        if (field == Field.TITLE) {
+            throw new IllegalArgumentException("Title is not hash indexed");
+        }
+        return valueIndex.getOrDefault(foldedValue, NO_SONGS);
+    }
+
+    /**
+     * Checks if a song is one of the most recently added songs. Songs get ascending ids,
+     * so only the songs with a higher id are counted, and only until there are enough of them.
+     */
+    boolean isAmongNewest(int songId, int amount) {
+        if (!allIds.get(songId)) {
+            return false;
+        }
+        int newer = 0;
+        for (int id = allIds.nextSetBit(songId + 1); id >= 0; id = allIds.nextSetBit(id + 1)) {
+            if (++newer >= amount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    BitSet newest(int amount) {
+        BitSet result = new BitSet();
+        for (int i = 0, id = allIds.length() - 1; i < amount && id >= 0; i++, id = allIds.previousSetBit(id - 1)) {
+            result.set(id);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the n-th most recently added song, counting from 1, or -1 if there are fewer songs.
+     */
+    int nthNewest(int n) {
+        if (n <= 0) {
+            return -1;
+        }
+        int id = allIds.length() - 1;
+        for (int i = 1; i < n && id >= 0; i++) {
+            id = allIds.previousSetBit(id - 1);
+        }
+        return id;
+    }
+
+    int duration(int songId) {
+        IndexedSong indexedSong = songs.get(songId);
+        return indexedSong != null ? indexedSong.duration : -1;
+    }
+
+    int countDurationBetween(int min, int max) {
+        long[] sorted = sortedDurations();
+        return firstIndexAtLeast(sorted, max + 1L) - firstIndexAtLeast(sorted, min);
+    }
+
+    BitSet durationBetween(int min, int max) {
+        long[] sorted = sortedDurations();
+        BitSet result = new BitSet();
+        for (int i = firstIndexAtLeast(sorted, min), end = firstIndexAtLeast(sorted, max + 1L); i < end; i++) {
+            result.set((int) sorted[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Each entry holds a duration in the high 32 bits and a song id in the low 32 bits,
+     * so sorting the entries sorts by duration.
+     * Queries run at the same time under the read lock, so the first one after a change sorts while the others wait.
+     */
+    private synchronized long[] sortedDurations() {
+        if (durationsChanged) {
+            long[] sorted = new long[songs.size()];
+            int i = 0;
+            for (IndexedSong indexedSong : songs.values()) {
+                sorted[i++] = ((long) indexedSong.duration << 32) | (indexedSong.song.getId() & 0xFFFFFFFFL);
+            }
+            Arrays.sort(sorted);
+            durationsAndIds = sorted;
+            durationsChanged = false;
+        }
+        return durationsAndIds;
+    }
+
+    /**
+     * Binary searches for the first entry with at least the given duration.
+     */
+    private static int firstIndexAtLeast(long[] sorted, long duration) {
+        if (duration > Integer.MAX_VALUE) {
+            return sorted.length;
+        }
+        long key = duration << 32;
+        int index = Arrays.binarySearch(sorted, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void addIndexed(SearchKey key) {
+        IndexedSong indexedSong = new IndexedSong(key);
+        int id = indexedSong.song.getId();
+
+        songs.put(id, indexedSong);
+        allIds.set(id);
+        byArtist.computeIfAbsent(key.getArtist(), unused -> new BitSet()).set(id);
+        byGenre.computeIfAbsent(key.getGenre(), unused -> new BitSet()).set(id);
+        durationsChanged = true;
+    }
+
+    private void removeIndexed(int songId) {
+        IndexedSong indexedSong = songs.remove(songId);
+        if (indexedSong == null) {
+            return;
+        }
+
+        allIds.clear(songId);
+        clearFrom(byArtist, indexedSong.key.getArtist(), songId);
+        clearFrom(byGenre, indexedSong.key.getGenre(), songId);
+        durationsChanged = true;
+    }
+
+    private static void clearFrom(Map<String, BitSet> valueIndex, String value, int songId) {
+        BitSet songIds = valueIndex.get(value);
+        if (songIds != null) {
+            songIds.clear(songId);
+            if (songIds.isEmpty()) {
+                valueIndex.remove(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package BLL.Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the search language of the search field into a SongQuery, e.g.
+ * {@code artist:queen genre:rock duration:>300 "bohemian"}.
+ * <ul>
+ *     <li>A word or a "quoted text" matches songs with it in the title, artist or genre.</li>
+ *     <li>title:text matches songs with the text in the title.</li>
+ *     <li>artist:name and genre:name match songs with exactly that artist or genre, ignoring case and accents.</li>
+ *     <li>duration:>300, duration:<=4:30, duration:180..240 and duration:200 match on the duration,
+ *     in seconds or minutes:seconds.</li>
+ *     <li>added:50 matches the 50 most recently added songs.</li>
+ *     <li>Conditions next to each other must all match. OR, NOT, -condition and parentheses combine them.</li>
+ * </ul>
+ * Operators must be written in capitals, so "rock and roll" is text. Quotes and parentheses alone don't
+ * make a query structured, they are only read as search language next to a field, an operator or a -condition.
+ * The parser never fails, as the query is parsed while it is being typed.
+ * Anything it doesn't understand, like a missing parenthesis, is skipped or read as text.
+ */
+public class SongQueryParser {
+    // Only a field, a -condition or an operator in capitals makes a query structured, so text like
+    // "rock and roll" or "Song (Remix)" is still searched as text, ranked and matched fuzzily.
+    private static final Pattern STRUCTURED = Pattern.compile(
+            "(^|\\s)-\\S|\\b(?i:title|artist|genre|duration|added):|(^|\\s)(AND|OR|NOT)(\\s|$)");
+
+    private final List<String> tokens;
+    private int position;
+
+    private SongQueryParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Tells whether a query uses any of the search language, or is just text to search for.
+     * @param query The text of the search field.
+     * @return true if the query should be parsed.
+     */
+    public static boolean isStructured(String query) {
+        return STRUCTURED.matcher(query).find();
+    }
+
+    /**
+     * Parses a query.
+     * @param query The text of the search field.
+     * @return The parsed query. An empty query matches every song.
+     */
+    public static SongQuery parse(String query) {
+        SongQueryParser parser = new SongQueryParser(tokenize(query));
+        List<SongQuery> alternatives = new ArrayList<>();
+
+        // A stray closing parenthesis ends parseOr early, so it is skipped and parsing goes on.
+        while (parser.position < parser.tokens.size()) {
+            SongQuery parsed = parser.parseOr();
+            if (parsed != null) {
+                alternatives.add(parsed);
+            }
+            if (parser.position < parser.tokens.size()) {
+                parser.position++;
+            }
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new SongQuery.And(alternatives);
+    }
+
+    /**
+     * orExpression := andExpression ("OR" andExpression)*
+     */
+    private SongQuery parseOr() {
+        List<SongQuery> alternatives = new ArrayList<>();
+        SongQuery first = parseAnd();
+        if (first != null) {
+            alternatives.add(first);
+        }
+
+        while (peekIs("OR")) {
+            position++;
+            SongQuery next = parseAnd();
+            if (next != null) {
+                alternatives.add(next);
+            }
+        }
+
+        if (alternatives.isEmpty()) {
+            return null;
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new SongQuery.Or(alternatives);
+    }
+
+    /**
+     * andExpression := notExpression ("AND"? notExpression)*
+     */
+    private SongQuery parseAnd() {
+        List<SongQuery> conditions = new ArrayList<>();
+
+        while (position < tokens.size() && !peekIs("OR") && !peekIs(")")) {
+            if (peekIs("AND")) {
+                position++;
+                continue;
+            }
+            SongQuery condition = parseNot();
+            if (condition != null) {
+                conditions.add(condition);
+            }
+        }
+
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        return conditions.size() == 1 ? conditions.get(0) : new SongQuery.And(conditions);
+    }
+
+    /**
+     * notExpression := ("NOT" | "-") notExpression | "(" orExpression ")" | term
+     */
+    private SongQuery parseNot() {
+        String token = tokens.get(position++);
+
+        if (token.equals("NOT")) {
+            if (position >= tokens.size() || peekIs(")") || peekIs("OR")) {
+                return null;
+            }
+            SongQuery condition = parseNot();
+            return condition != null ? new SongQuery.Not(condition) : null;
+        }
+        if (token.length() > 1 && token.startsWith("-")) {
+            SongQuery condition = parseTerm(token.substring(1));
+            return condition != null ? new SongQuery.Not(condition) : null;
+        }
+        if (token.equals("(")) {
+            SongQuery inner = parseOr();
+            if (peekIs(")")) {
+                position++;
+            }
+            return inner;
+        }
+        return parseTerm(token);
+    }
+
+    /**
+     * term := field ":" value | "quoted text" | word
+     */
+    private SongQuery parseTerm(String token) {
+        if (token.startsWith("\"")) {
+            String text = unquote(token);
+            return text.isEmpty() ? null : new SongQuery.Contains(null, text);
+        }
+
+        int colon = token.indexOf(':');
+        if (colon > 0) {
+            String field = token.substring(0, colon).toLowerCase();
+            String value = unquote(token.substring(colon + 1));
+
+            switch (field) {
+                case "title":
+                    return value.isEmpty() ? null : new SongQuery.Contains(SongQueryIndex.Field.TITLE, value);
+                case "artist":
+                    return value.isEmpty() ? null : new SongQuery.Equals(SongQueryIndex.Field.ARTIST, value);
+                case "genre":
+                    return value.isEmpty() ? null : new SongQuery.Equals(SongQueryIndex.Field.GENRE, value);
+                case "duration":
+                    return parseDuration(value);
+                case "added":
+                    return parseRecentlyAdded(value);
+                default:
+                    break;
+            }
+        }
+        return new SongQuery.Contains(null, token);
+    }
+
+    /**
+     * Parses >n, >=n, <n, <=n, =n, n and n..m, where n and m are seconds or minutes:seconds.
+     * @return The condition, or null if the value isn't complete yet.
+     */
+    private static SongQuery parseDuration(String value) {
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            int min = parseSeconds(value.substring(0, range));
+            int max = parseSeconds(value.substring(range + 2));
+            return min < 0 || max < 0 ? null : new SongQuery.DurationBetween(min, max);
+        }
+
+        String operator = value.startsWith(">=") || value.startsWith("<=") ? value.substring(0, 2)
+                : value.startsWith(">") || value.startsWith("<") || value.startsWith("=") ? value.substring(0, 1) : "";
+        int seconds = parseSeconds(value.substring(operator.length()));
+        if (seconds < 0) {
+            return null;
+        }
+
+        return switch (operator) {
+            case ">" -> new SongQuery.DurationBetween(seconds + 1, Integer.MAX_VALUE);
+            case ">=" -> new SongQuery.DurationBetween(seconds, Integer.MAX_VALUE);
+            case "<" -> new SongQuery.DurationBetween(0, seconds - 1);
+            case "<=" -> new SongQuery.DurationBetween(0, seconds);
+            default -> new SongQuery.DurationBetween(seconds, seconds);
+        };
+    }
+
+    /**
+     * Parses n, the number of most recently added songs.
+     * @return The condition, or null if the value isn't a number yet.
+     */
+    private static SongQuery parseRecentlyAdded(String value) {
+        try {
+            int amount = Integer.parseInt(value);
+            return amount < 0 ? null : new SongQuery.RecentlyAdded(amount);
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The seconds, or -1 if the text isn't seconds or minutes:seconds.
+     */
+    private static int parseSeconds(String text) {
+        try {
+            int colon = text.indexOf(':');
+            if (colon >= 0) {
+                return Integer.parseInt(text.substring(0, colon)) * 60 + Integer.parseInt(text.substring(colon + 1));
+            }
+            return Integer.parseInt(text);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String unquote(String text) {
+        if (text.startsWith("\"")) {
+            text = text.substring(1);
+            if (text.endsWith("\"")) {
+                text = text.substring(0, text.length() - 1);
+            }
+        }
+        return text;
+    }
+
+    private boolean peekIs(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    /**
+     * Splits a query into parentheses, and words with any "quoted text" kept whole.
+     * A quote that is never closed runs to the end of the query.
+     */
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+
+            if (c == '"') {
+                token.append(c);
+                quoted = !quoted;
+            }
+            else if (quoted) {
+                token.append(c);
+            }
+            else if (Character.isWhitespace(c) || c == '(' || c == ')') {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+                if (c != ' ' && !Character.isWhitespace(c)) {
+                    tokens.add(String.valueOf(c));
+                }
+            }
+            else {
+                token.append(c);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
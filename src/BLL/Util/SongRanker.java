@@ -0,0 +1,125 @@
+package BLL.Util;
+
+import BE.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Ranks search results by how well they match the query, keeping only the best ones.
+ * A match in the title scores above a match in the artist, which scores above a match in the genre,
+ * and within a field an exact match scores above a prefix, a word prefix and a match inside a word.
+ * The songs are scored against their SearchKey, so no field is folded again while ranking.
+ */
+public class SongRanker {
+    // How much a match in each field is worth.
+    private static final int TITLE_WEIGHT = 100;
+    private static final int ARTIST_WEIGHT = 10;
+    private static final int GENRE_WEIGHT = 1;
+
+    // How much each kind of match is worth within a field.
+    private static final int EXACT = 4;
+    private static final int PREFIX = 3;
+    private static final int WORD_PREFIX = 2;
+    private static final int INFIX = 1;
+
+    /**
+     * A song with its score, and its position in the results so equal scores keep their order.
+     */
+    private static class ScoredSong {
+        private final Song song;
+        private final int score;
+        private final int position;
+
+        private ScoredSong(Song song, int score, int position) {
+            this.song = song;
+            this.score = score;
+            this.position = position;
+        }
+    }
+
+    // The worst song first, so it is the one dropped when the heap is full.
+    private static final Comparator<ScoredSong> WORST_FIRST = (a, b) -> a.score != b.score
+            ? Integer.compare(a.score, b.score)
+            : Integer.compare(b.position, a.position);
+
+    /**
+     * Returns the best matching songs, the best first.
+     * Only the best songs are kept while scoring, so the results are never sorted as a whole.
+     * Songs with the same score keep the order they had in the results.
+     * @param results The songs matching the query.
+     * @param query The query the songs were found with.
+     * @param limit The number of songs to return at most.
+     * @param keyOf Gives the folded fields of a song, e.g. SongSearcher::keyOf.
+     * @return Up to limit songs, the best first.
+     */
+    public static List<Song> topK(List<Song> results, String query, int limit, Function<Song, SearchKey> keyOf) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        String foldedQuery = SearchKey.fold(query.trim());
+        PriorityQueue<ScoredSong> best = new PriorityQueue<>(Math.min(limit, results.size()) + 1, WORST_FIRST);
+
+        int position = 0;
+        for (Song song : results) {
+            ScoredSong scored = new ScoredSong(song, score(keyOf.apply(song), foldedQuery), position++);
+
+            if (best.size() < limit) {
+                best.add(scored);
+            }
+            else if (WORST_FIRST.compare(scored, best.peek()) > 0) {
+                best.poll();
+                best.add(scored);
+            }
+        }
+
+        List<Song> ranked = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ranked.add(best.poll().song);
+        }
+        Collections.reverse(ranked);
+        return ranked;
+    }
+
+    /**
+     * Scores how well a song matches the query.
+     * @param key The folded fields of the song.
+     * @param foldedQuery The query folded with SearchKey.
+     * @return The score, higher is better, or 0 if no field contains the query.
+     */
+    public static int score(SearchKey key, String foldedQuery) {
+        if (foldedQuery.isEmpty()) {
+            return 0;
+        }
+        return TITLE_WEIGHT * scoreField(key.getTitle(), foldedQuery)
+                + ARTIST_WEIGHT * scoreField(key.getArtist(), foldedQuery)
+                + GENRE_WEIGHT * scoreField(key.getGenre(), foldedQuery);
+    }
+
+    /**
+     * Helper method to score, scoring the best match of the query in one field.
+     */
+    private static int scoreField(String foldedField, String foldedQuery) {
+        int index = foldedField.indexOf(foldedQuery);
+        if (index < 0) {
+            return 0;
+        }
+        if (index == 0) {
+            return foldedField.length() == foldedQuery.length() ? EXACT : PREFIX;
+        }
+
+        // A later match may start a word even if the first one doesn't.
+        while (index > 0) {
+            if (!Character.isLetterOrDigit(foldedField.charAt(index - 1))) {
+                return WORD_PREFIX;
+            }
+            index = foldedField.indexOf(foldedQuery, index + 1);
+        }
+        return INFIX;
+    }
+}
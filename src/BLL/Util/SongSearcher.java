@@ -1,57 +1,155 @@
 package BLL.Util;
 
+import BE.PlayList;
 import BE.Song;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class SongSearcher {
+    private final TrigramIndex index = new TrigramIndex();
+    private final FuzzySearcher fuzzySearcher = new FuzzySearcher();
+    private final SongQueryIndex queryIndex = new SongQueryIndex(index);
+    private final SuggestionIndex suggestionIndex = new SuggestionIndex();
+    private final SmartPlaylists smartPlaylists = new SmartPlaylists(queryIndex);
+
+    /**
+     * Replaces the indexed songs with the whole library.
+     * @param allSongs, the list of all songs
+     */
+    public void index(Collection<Song> allSongs) {
+        List<SearchKey> keys = new ArrayList<>(allSongs.size());
+        for (Song song : allSongs) {
+            keys.add(new SearchKey(song));
+        }
+
+        index.rebuild(keys);
+        fuzzySearcher.rebuild(keys);
+        queryIndex.rebuild(keys);
+        suggestionIndex.rebuild(allSongs);
+        smartPlaylists.refillAll();
+    }
+
+    /**
+     * Adds a new song to the index.
+     * @param song, the song that was created
+     */
+    public void add(Song song) {
+        SearchKey key = new SearchKey(song);
+        index.add(key);
+        fuzzySearcher.add(key);
+        queryIndex.add(key);
+        suggestionIndex.add(song);
+        smartPlaylists.songChanged(song);
+    }
+
+    /**
+     * Re-indexes a song after its title, artist or genre has changed.
+     * @param song, the song that was updated
+     */
+    public void update(Song song) {
+        SearchKey key = new SearchKey(song);
+        index.update(key);
+        fuzzySearcher.add(key);
+        queryIndex.add(key);
+        suggestionIndex.add(song);
+        smartPlaylists.songChanged(song);
+    }
+
+    /**
+     * Removes a deleted song from the index.
+     * @param song, the song that was deleted
+     */
+    public void remove(Song song) {
+        index.remove(song.getId());
+        fuzzySearcher.remove(song.getId());
+        queryIndex.remove(song.getId());
+        suggestionIndex.remove(song.getId());
+        smartPlaylists.songRemoved(song.getId());
+    }
+
+    /**
+     * Filter the indexed songs using a search query.
+     * Only the songs containing every trigram of the query are compared to it.
+     * @param query, the string input used to filter
+     * @return a list of songs matching the query in either title, artist or category, ordered by id
+     */
+    public List<Song> search(String query) {
+        return index.search(query);
+    }
+
+    /**
+     * Returns the folded title, artist and genre of a song, as the indexes have them.
+     * @param song, the song
+     * @return the key the song is indexed under, or a new key if the song isn't indexed
+     */
+    public SearchKey keyOf(Song song) {
+        SearchKey key = index.keyOf(song.getId());
+        return key != null ? key : new SearchKey(song);
+    }
+
     /**
-     * Filter the list of songs in library using a search query
-     * @param searchBase, the list of all songs
+     * Filter some of the indexed songs using a search query, e.g. the results of an earlier search.
+     * @param searchBase, the songs to filter
      * @param query, the string input used to filter
-     * @return a list of songs matching the query in either title, artist or category
+     * @return a list of the songs matching the query in either title, artist or category
      */
-    public List<Song> search(List<Song> searchBase, String query) {
-        List<Song> searchResult = new ArrayList<>();
+    public List<Song> filter(List<Song> searchBase, String query) {
+        return index.filter(searchBase, query);
+    }
 
-        for (Song song: searchBase) {
-            if(compareToTitle(query, song) || compareToArtist(query, song) || compareToCategory(query, song))
-            {
-                searchResult.add(song);
-            }
-        }
+    /**
+     * Filter the indexed songs using the search language, e.g. artist:queen genre:rock duration:>300 "bohemian".
+     * @param query, the query, see SongQueryParser
+     * @return a list of songs matching the query, ordered by id
+     */
+    public List<Song> searchQuery(String query) {
+        return queryIndex.search(SongQueryParser.parse(query));
+    }
+
+    /**
+     * Filter the indexed songs using a search query, allowing typos in the words of the title and artist.
+     * @param query, the string input used to filter
+     * @return a list of songs matching the query, the closest matches first
+     */
+    public List<Song> searchFuzzy(String query) {
+        return fuzzySearcher.search(query);
+    }
 
-        return searchResult;
+    /**
+     * Keeps the songs of a smart playlist matching its rule as the indexed songs change.
+     * @param playList the smart playlist, which is filled with the matching songs on the executor of applySmartPlaylistChangesOn
+     */
+    public void watchSmartPlaylist(PlayList playList) {
+        smartPlaylists.watch(playList);
     }
 
     /**
-     * Helper method to check if the song title matches the search query
-     * @param query, the string input to search for
-     * @param song, the song to check
-     * @return true if there is a match, false if not.
+     * Stops keeping the songs of a playlist up to date.
+     * @param playList the playlist
      */
-    private boolean compareToTitle(String query, Song song) {
-        return song.getTitle().toLowerCase().contains(query.toLowerCase());
+    public void unwatchSmartPlaylist(PlayList playList) {
+        smartPlaylists.unwatch(playList);
     }
 
     /**
-     * Helper method to check if the song artist matches the search query
-     * @param query, the string input to search for
-     * @param song, the song to check
-     * @return true if there is a match, false if not.
+     * Chooses where the songs of the smart playlists are changed, see SmartPlaylists.applyChangesOn.
+     * @param executor runs the changes, e.g. on the JavaFX thread
+     * @param onChanged runs on the executor after the songs of a smart playlist have changed
      */
-    private boolean compareToArtist(String query, Song song) {
-        return song.getArtist().toLowerCase().contains(query.toLowerCase());
+    public void applySmartPlaylistChangesOn(Executor executor, Runnable onChanged) {
+        smartPlaylists.applyChangesOn(executor, onChanged);
     }
 
     /**
-     * Helper method to check if the song category/genre matches the search query
-     * @param query, the string input to search for
-     * @param song, the song to check
-     * @return true if there is a match, false if not.
+     * Suggests titles, artists and genres of the indexed songs starting with what the user has typed.
+     * @param prefix, the string input to complete
+     * @param limit, the number of suggestions to return at most
+     * @return up to limit suggestions, the ones shared by the most songs first
      */
-    private boolean compareToCategory(String query, Song song) {
-        return song.getGenre().toLowerCase().contains(query.toLowerCase());
+    public List<String> suggest(String prefix, int limit) {
+        return suggestionIndex.suggest(prefix, limit);
     }
 }
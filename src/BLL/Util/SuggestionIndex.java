@@ -0,0 +1,462 @@
+package BLL.Util;
+
+import BE.Song;
+import DAL.Util.IntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Suggests titles, artists and genres starting with what the user has typed,
+ * the ones shared by the most songs first.
+ * The terms are kept sorted by their folded form (see SearchKey), so "beyo" suggests "Beyoncé".
+ * They are stored in a few flat arrays, with all their characters in one array,
+ * so hundreds of thousands of terms take little more memory than their characters.
+ * The terms starting with a prefix are next to each other, and a tree over their counts
+ * finds the most popular of them without looking at the rest.
+ * Changes to the count of a term are made in place. New terms are kept on the side,
+ * and merged into the arrays once enough of them have piled up.
+ * Suggestions may be asked for while the index is changed from another thread.
+ */
+public class SuggestionIndex {
+    // The new terms are merged into the arrays when there are more of them than this.
+    private static final int MAX_PENDING_TERMS = 1024;
+
+    /**
+     * A term with the number of songs using it.
+     */
+    private static class PendingTerm {
+        private final String key;
+        private final String term;
+        private int count;
+
+        private PendingTerm(String key, String term, int count) {
+            this.key = key;
+            this.term = term;
+            this.count = count;
+        }
+    }
+
+    // Term i is termChars[termStarts[i]] up to termChars[termStarts[i + 1]], and its folded form is found the same way in keyChars.
+    private char[] termChars = new char[0];
+    private int[] termStarts = {0};
+    private char[] keyChars = new char[0];
+    private int[] keyStarts = {0};
+    private int[] termCounts = new int[0];
+    private int termCount;
+    // A segment tree where every node holds the most popular term below it. The leaves start at termCount.
+    private int[] mostPopular = new int[0];
+
+    // The terms that aren't in the arrays yet, keyed by the folded term, so the ones starting with a prefix can be found.
+    private final TreeMap<String, PendingTerm> pendingTerms = new TreeMap<>();
+    // The terms each song was indexed under, so it can be removed again after the Song object has been changed.
+    private final IntHashMap<String[]> termsBySong = new IntHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Replaces the indexed songs.
+     * @param allSongs The songs to index.
+     */
+    public void rebuild(Collection<Song> allSongs) {
+        lock.writeLock().lock();
+        try {
+            termsBySong.clear();
+            pendingTerms.clear();
+
+            Map<String, PendingTerm> counted = new HashMap<>();
+            for (Song song : allSongs) {
+                String[] terms = termsOf(song);
+                termsBySong.put(song.getId(), terms);
+
+                for (String term : terms) {
+                    counted.computeIfAbsent(toKey(term), key -> new PendingTerm(key, term, 0)).count++;
+                }
+            }
+
+            build(new ArrayList<>(new TreeMap<>(counted).values()));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a song, or updates it if it has been added before.
+     * @param song The song to add.
+     */
+    public void add(Song song) {
+        lock.writeLock().lock();
+        try {
+            String[] oldTerms = termsBySong.get(song.getId());
+            if (oldTerms != null) {
+                changeCounts(oldTerms, -1);
+            }
+
+            String[] terms = termsOf(song);
+            termsBySong.put(song.getId(), terms);
+            changeCounts(terms, 1);
+            compactIfNeeded();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a song.
+     * @param songId The id of the song to remove.
+     */
+    public void remove(int songId) {
+        lock.writeLock().lock();
+        try {
+            String[] terms = termsBySong.remove(songId);
+            if (terms != null) {
+                changeCounts(terms, -1);
+                compactIfNeeded();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the titles, artists and genres starting with a prefix, ignoring case and accents.
+     * @param prefix What the user has typed.
+     * @param limit The number of suggestions to return at most.
+     * @return Up to limit terms, the ones shared by the most songs first.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = toKey(prefix.trim());
+        if (key.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<PendingTerm> candidates = new ArrayList<>();
+
+            for (Map.Entry<String, PendingTerm> pending : pendingTerms.tailMap(key).entrySet()) {
+                if (!pending.getKey().startsWith(key)) {
+                    break;
+                }
+                if (pending.getValue().count > 0) {
+                    candidates.add(pending.getValue());
+                }
+            }
+
+            int from = firstTermNotBefore(key);
+            int to = firstTermAfter(key, from);
+            int found = 0;
+
+            // Takes the terms from the most popular, until there are enough of them.
+            // Every range is a run of terms starting with the prefix, with the most popular of them.
+            PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> a[2] == b[2] ? 0 : isMorePopular(a[2], b[2]) ? -1 : 1);
+            if (from < to) {
+                ranges.add(new int[] {from, to, mostPopularBetween(from, to)});
+            }
+            while (found < limit && !ranges.isEmpty()) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                if (termCounts[best] == 0) {
+                    // Only terms no song uses anymore are left.
+                    break;
+                }
+
+                if (range[0] < best) {
+                    ranges.add(new int[] {range[0], best, mostPopularBetween(range[0], best)});
+                }
+                if (best + 1 < range[1]) {
+                    ranges.add(new int[] {best + 1, range[1], mostPopularBetween(best + 1, range[1])});
+                }
+
+                candidates.add(new PendingTerm(keyAt(best), termAt(best), termCounts[best]));
+                found++;
+            }
+
+            candidates.sort(Comparator.comparingInt((PendingTerm term) -> -term.count)
+                    .thenComparing(term -> term.key));
+
+            List<String> suggestions = new ArrayList<>(Math.min(limit, candidates.size()));
+            for (int i = 0; i < candidates.size() && i < limit; i++) {
+                suggestions.add(candidates.get(i).term);
+            }
+            return suggestions;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of distinct terms used by the indexed songs.
+     * @return The number of terms.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = pendingTerms.size();
+            for (int i = 0; i < termCount; i++) {
+                if (termCounts[i] > 0) {
+                    size++;
+                }
+            }
+            return size;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method to add and remove, changing the counts of some terms by one.
+     */
+    private void changeCounts(String[] terms, int change) {
+        for (String term : terms) {
+            String key = toKey(term);
+            int index = findTerm(key);
+
+            if (index >= 0) {
+                termCounts[index] += change;
+                updateMostPopular(index);
+                continue;
+            }
+
+            PendingTerm pending = pendingTerms.computeIfAbsent(key, newKey -> new PendingTerm(newKey, term, 0));
+            pending.count += change;
+            if (pending.count <= 0) {
+                pendingTerms.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Merges the new terms into the arrays once there are enough of them.
+     */
+    private void compactIfNeeded() {
+        if (pendingTerms.size() <= MAX_PENDING_TERMS) {
+            return;
+        }
+
+        List<PendingTerm> merged = new ArrayList<>(termCount + pendingTerms.size());
+        int index = 0;
+        for (Map.Entry<String, PendingTerm> pending : pendingTerms.entrySet()) {
+            while (index < termCount && compareToTerm(index, pending.getKey()) < 0) {
+                merged.add(new PendingTerm(keyAt(index), termAt(index), termCounts[index]));
+                index++;
+            }
+            merged.add(pending.getValue());
+        }
+        for (; index < termCount; index++) {
+            merged.add(new PendingTerm(keyAt(index), termAt(index), termCounts[index]));
+        }
+        pendingTerms.clear();
+
+        build(merged);
+    }
+
+    /**
+     * Replaces the arrays with the given terms. Terms no song uses anymore are left out.
+     * @param sortedTerms The terms sorted by their folded form.
+     */
+    private void build(List<PendingTerm> sortedTerms) {
+        int length = 0;
+        int keyLength = 0;
+        int count = 0;
+        for (PendingTerm term : sortedTerms) {
+            if (term.count > 0) {
+                length += term.term.length();
+                keyLength += term.key.length();
+                count++;
+            }
+        }
+
+        char[] chars = new char[length];
+        int[] starts = new int[count + 1];
+        char[] keys = new char[keyLength];
+        int[] keyStarts = new int[count + 1];
+        int[] counts = new int[count];
+
+        int index = 0;
+        for (PendingTerm term : sortedTerms) {
+            if (term.count > 0) {
+                term.term.getChars(0, term.term.length(), chars, starts[index]);
+                starts[index + 1] = starts[index] + term.term.length();
+                term.key.getChars(0, term.key.length(), keys, keyStarts[index]);
+                keyStarts[index + 1] = keyStarts[index] + term.key.length();
+                counts[index] = term.count;
+                index++;
+            }
+        }
+
+        termChars = chars;
+        termStarts = starts;
+        keyChars = keys;
+        this.keyStarts = keyStarts;
+        termCounts = counts;
+        termCount = count;
+
+        mostPopular = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            mostPopular[count + i] = i;
+        }
+        for (int node = count - 1; node > 0; node--) {
+            mostPopular[node] = morePopular(mostPopular[2 * node], mostPopular[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Updates the most popular terms above a term after its count has changed.
+     */
+    private void updateMostPopular(int index) {
+        for (int node = (termCount + index) / 2; node > 0; node /= 2) {
+            mostPopular[node] = morePopular(mostPopular[2 * node], mostPopular[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Returns the most popular term from index from (inclusive) to index to (exclusive).
+     */
+    private int mostPopularBetween(int from, int to) {
+        int best = -1;
+        for (from += termCount, to += termCount; from < to; from /= 2, to /= 2) {
+            if ((from & 1) == 1) {
+                best = morePopular(best, mostPopular[from++]);
+            }
+            if ((to & 1) == 1) {
+                best = morePopular(best, mostPopular[--to]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the term used by the most songs, or the first in sorted order if they are used by as many.
+     * An index of -1 means no term.
+     */
+    private int morePopular(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return isMorePopular(a, b) ? a : b;
+    }
+
+    private boolean isMorePopular(int a, int b) {
+        return termCounts[a] > termCounts[b] || termCounts[a] == termCounts[b] && a < b;
+    }
+
+    /**
+     * Returns the index of the first term that is not sorted before the prefix.
+     */
+    private int firstTermNotBefore(String key) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareToPrefix(middle, key) < 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first term from index from that is sorted after every term starting with the prefix.
+     */
+    private int firstTermAfter(String key, int from) {
+        int low = from;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareToPrefix(middle, key) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the start of a folded term to a folded prefix.
+     * @return 0 if the term starts with the prefix, otherwise whether the term is sorted before or after it.
+     */
+    private int compareToPrefix(int index, String key) {
+        int start = keyStarts[index];
+        int length = keyStarts[index + 1] - start;
+
+        for (int i = 0; i < length && i < key.length(); i++) {
+            char c = keyChars[start + i];
+            if (c != key.charAt(i)) {
+                return c < key.charAt(i) ? -1 : 1;
+            }
+        }
+        return length < key.length() ? -1 : 0;
+    }
+
+    /**
+     * Compares a whole folded term to another folded term.
+     */
+    private int compareToTerm(int index, String key) {
+        int compared = compareToPrefix(index, key);
+        if (compared != 0) {
+            return compared;
+        }
+        return keyStarts[index + 1] - keyStarts[index] > key.length() ? 1 : 0;
+    }
+
+    /**
+     * Returns the index of a term, or -1 if it isn't in the arrays.
+     */
+    private int findTerm(String key) {
+        int index = firstTermNotBefore(key);
+        if (index < termCount && compareToTerm(index, key) == 0) {
+            return index;
+        }
+        return -1;
+    }
+
+    private String termAt(int index) {
+        return new String(termChars, termStarts[index], termStarts[index + 1] - termStarts[index]);
+    }
+
+    private String keyAt(int index) {
+        return new String(keyChars, keyStarts[index], keyStarts[index + 1] - keyStarts[index]);
+    }
+
+    private static String toKey(String term) {
+        return SearchKey.fold(term);
+    }
+
+    /**
+     * Returns the title, artist and genre of a song, without blank or repeated ones.
+     */
+    private static String[] termsOf(Song song) {
+        Map<String, String> terms = new LinkedHashMap<>();
+
+        for (String field : new String[] {song.getTitle(), song.getArtist(), song.getGenre()}) {
+            String term = field == null ? "" : field.trim();
+            String key = toKey(term);
+            if (!key.isBlank()) {
+                terms.putIfAbsent(key, term);
+            }
+        }
+        return terms.values().toArray(new String[0]);
+    }
+}
@@ -0,0 +1,347 @@
+package BLL.Util;
+
+import BE.Song;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An inverted index from every three character sequence (trigram) in the title, artist and genre
+ * of a song, to the ids of the songs containing it. A query of three or more characters can only
+ * match songs that contain all of its trigrams, so only those songs have to be checked.
+ * The songs are kept as their SearchKey, which is also what a song was indexed under,
+ * so it can be removed again after the Song object has been changed.
+ * Searches may run while the index is changed from another thread.
+ */
+public class TrigramIndex {
+    private static final int TRIGRAM_LENGTH = 3;
+
+    /**
+     * The ids of the songs containing a trigram, sorted ascending.
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            // Ids are usually handed out in ascending order, so this is mostly an append.
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        private void remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    // Sorted by id, for lookups by id and for queries too short to have a trigram.
+    private final List<SearchKey> songs = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Replaces everything in the index with the given songs.
+     * @param allSongs The keys of the songs to index.
+     */
+    public void rebuild(Collection<SearchKey> allSongs) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            songs.clear();
+
+            // Adding the songs in id order makes every insert an append.
+            List<SearchKey> sortedSongs = new ArrayList<>(allSongs);
+            sortedSongs.sort((a, b) -> Integer.compare(a.getSong().getId(), b.getSong().getId()));
+            for (SearchKey key : sortedSongs) {
+                addIndexed(key);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a song to the index, or re-indexes it if a song with the same id is already there.
+     * @param key The key of the song to add.
+     */
+    public void add(SearchKey key) {
+        lock.writeLock().lock();
+        try {
+            addIndexed(key);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes a song whose title, artist or genre has changed.
+     * @param key The new key of the changed song.
+     */
+    public void update(SearchKey key) {
+        add(key);
+    }
+
+    /**
+     * Removes a song from the index.
+     * @param songId The id of the song to remove.
+     */
+    public void remove(int songId) {
+        lock.writeLock().lock();
+        try {
+            removeIndexed(songId);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the key a song is indexed under.
+     * @param songId The id of the song.
+     * @return The key, or null if the song isn't indexed.
+     */
+    public SearchKey keyOf(int songId) {
+        lock.readLock().lock();
+        try {
+            int index = indexOf(songId);
+            return index >= 0 ? songs.get(index) : null;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return songs.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the songs whose title, artist or genre contains the query, ignoring case and accents.
+     * @param query The text to search for.
+     * @return The matching songs, ordered by id.
+     */
+    public List<Song> search(String query) {
+        String foldedQuery = SearchKey.fold(query);
+
+        lock.readLock().lock();
+        try {
+            List<Song> searchResult = new ArrayList<>();
+
+            // Too short to have a trigram, so every song is checked.
+            if (foldedQuery.length() < TRIGRAM_LENGTH) {
+                for (SearchKey key : songs) {
+                    if (key.contains(foldedQuery)) {
+                        searchResult.add(key.getSong());
+                    }
+                }
+                return searchResult;
+            }
+
+            int[] candidates = findCandidates(foldedQuery);
+            for (int id : candidates) {
+                SearchKey key = songs.get(indexOf(id));
+                if (key.contains(foldedQuery)) {
+                    searchResult.add(key.getSong());
+                }
+            }
+            return searchResult;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the songs among some indexed songs whose title, artist or genre contains the query,
+     * ignoring case and accents. Used to narrow the results of an earlier search.
+     * @param searchBase The songs to filter.
+     * @param query The text to search for.
+     * @return The matching songs, in the order of the search base.
+     */
+    public List<Song> filter(List<Song> searchBase, String query) {
+        String foldedQuery = SearchKey.fold(query);
+
+        lock.readLock().lock();
+        try {
+            List<Song> searchResult = new ArrayList<>();
+            for (Song song : searchBase) {
+                int index = indexOf(song.getId());
+                // A song removed since the earlier search is left out.
+                if (index >= 0 && songs.get(index).contains(foldedQuery)) {
+                    searchResult.add(songs.get(index).getSong());
+                }
+            }
+            return searchResult;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the songs that may contain a text, for checking them by other means.
+     * @param foldedText The text folded with SearchKey.
+     * @return The ids sorted ascending, or null if the text is too short to have a trigram.
+     */
+    int[] candidates(String foldedText) {
+        if (foldedText.length() < TRIGRAM_LENGTH) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            return findCandidates(foldedText);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Intersects the postings of every trigram in the query, starting with the shortest,
+     * so the intersection shrinks as fast as possible.
+     * @return The ids of the songs that contain every trigram of the query, sorted ascending.
+     */
+    private int[] findCandidates(String foldedQuery) {
+        List<Postings> queryPostings = new ArrayList<>();
+        for (long trigram : trigrams(foldedQuery)) {
+            Postings trigramPostings = postings.get(trigram);
+            if (trigramPostings == null) {
+                return new int[0];
+            }
+            queryPostings.add(trigramPostings);
+        }
+        queryPostings.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        Postings shortest = queryPostings.get(0);
+        int[] candidates = Arrays.copyOf(shortest.ids, shortest.size);
+        int candidateAmount = candidates.length;
+
+        for (int p = 1; p < queryPostings.size() && candidateAmount > 0; p++) {
+            Postings next = queryPostings.get(p);
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < candidateAmount && j < next.size; i++) {
+                while (j < next.size && next.ids[j] < candidates[i]) {
+                    j++;
+                }
+                if (j < next.size && next.ids[j] == candidates[i]) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            candidateAmount = kept;
+        }
+        return Arrays.copyOf(candidates, candidateAmount);
+    }
+
+    private void addIndexed(SearchKey key) {
+        int songId = key.getSong().getId();
+
+        int index = indexOf(songId);
+        if (index >= 0) {
+            removeIndexed(songId);
+            index = indexOf(songId);
+        }
+        songs.add(-index - 1, key);
+
+        for (long trigram : trigrams(key.getTitle(), key.getArtist(), key.getGenre())) {
+            postings.computeIfAbsent(trigram, unused -> new Postings()).add(songId);
+        }
+    }
+
+    private void removeIndexed(int songId) {
+        int index = indexOf(songId);
+        if (index < 0) {
+            return;
+        }
+        SearchKey key = songs.remove(index);
+
+        for (long trigram : trigrams(key.getTitle(), key.getArtist(), key.getGenre())) {
+            Postings trigramPostings = postings.get(trigram);
+            if (trigramPostings != null) {
+                trigramPostings.remove(songId);
+                if (trigramPostings.size == 0) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary searches the songs for an id.
+     * @return The index of the song, or (-(insertion point) - 1) if it isn't indexed.
+     */
+    private int indexOf(int songId) {
+        int low = 0;
+        int high = songs.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = songs.get(middle).getSong().getId();
+            if (middleId < songId) {
+                low = middle + 1;
+            }
+            else if (middleId > songId) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the distinct trigrams of the texts, each packed into a long.
+     */
+    private static long[] trigrams(String... texts) {
+        long[] trigrams = new long[0];
+        int amount = 0;
+
+        for (String text : texts) {
+            int textTrigrams = text.length() - TRIGRAM_LENGTH + 1;
+            if (textTrigrams <= 0) {
+                continue;
+            }
+            trigrams = Arrays.copyOf(trigrams, amount + textTrigrams);
+            for (int i = 0; i < textTrigrams; i++) {
+                trigrams[amount++] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            }
+        }
+
+        Arrays.sort(trigrams, 0, amount);
+        int distinct = 0;
+        for (int i = 0; i < amount; i++) {
+            if (distinct == 0 || trigrams[distinct - 1] != trigrams[i]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+}
@@ -0,0 +1,267 @@
+package BLL.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Draws items at random in proportion to their weight, e.g. to play favourite songs more often.
+ * Each draw takes constant time with Vose's alias method.
+ * <p>
+ * The items are split into blocks of BLOCK_SIZE, each with its own alias table,
+ * and a table over the total weight of each block picks the block to draw from.
+ * When a weight changes, or an item is added or removed, only its block and the table over the blocks are rebuilt,
+ * so a change costs about BLOCK_SIZE + n / BLOCK_SIZE instead of n.
+ * The rebuilds wait until the next draw, so many changes in a row are rebuilt once.
+ * @param <T> The type of the items, e.g. Song. Items are told apart by equals,
+ *           and an item added more than once is drawn as one item.
+ */
+public class WeightedShuffle<T> {
+    private static final int BLOCK_SIZE = 256;
+    // Redraws when the same item comes twice in a row, unless it has almost all the weight.
+    private static final int MAX_REDRAWS = 8;
+
+    /**
+     * An alias table over a number of weights. A draw picks a column uniformly,
+     * and then either the column itself or its alias, so it takes constant time.
+     */
+    private static class AliasTable {
+        private final double[] probability;
+        private final int[] alias;
+        private final double total;
+
+        /**
+         * Builds the table with Vose's method in O(count).
+         */
+        private AliasTable(double[] weights, int offset, int count) {
+            probability = new double[count];
+            alias = new int[count];
+
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += weights[offset + i];
+            }
+            total = sum;
+            if (sum <= 0) {
+                return;
+            }
+
+            // Scaled so the average column is 1. Columns below 1 are topped up by a column above 1.
+            double[] scaled = new double[count];
+            int[] small = new int[count];
+            int[] large = new int[count];
+            int smallAmount = 0;
+            int largeAmount = 0;
+            for (int i = 0; i < count; i++) {
+                scaled[i] = weights[offset + i] * count / sum;
+                if (scaled[i] < 1) {
+                    small[smallAmount++] = i;
+                }
+                else {
+                    large[largeAmount++] = i;
+                }
+            }
+
+            while (smallAmount > 0 && largeAmount > 0) {
+                int less = small[--smallAmount];
+                int more = large[--largeAmount];
+                probability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) {
+                    small[smallAmount++] = more;
+                }
+                else {
+                    large[largeAmount++] = more;
+                }
+            }
+            // What is left is 1, apart from rounding errors.
+            while (largeAmount > 0) {
+                probability[large[--largeAmount]] = 1;
+            }
+            while (smallAmount > 0) {
+                probability[small[--smallAmount]] = 1;
+            }
+        }
+
+        private int draw(Random random) {
+            int column = random.nextInt(probability.length);
+            return random.nextDouble() < probability[column] ? column : alias[column];
+        }
+    }
+
+    private final List<T> items = new ArrayList<>();
+    private final Map<T, Integer> positions = new HashMap<>();
+    private final Map<T, Integer> copies = new HashMap<>();
+    private double[] weights = new double[BLOCK_SIZE];
+    private final List<AliasTable> blocks = new ArrayList<>();
+    private final BitSet changedBlocks = new BitSet();
+    private AliasTable blockTable;
+    private ToDoubleFunction<? super T> weightOf = item -> 1;
+    private final Random random;
+    private T lastItem;
+
+    /**
+     * Creates a shuffle with a random seed.
+     */
+    public WeightedShuffle() {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * @param seed The seed of the shuffle. The same seed gives the same draws.
+     */
+    public WeightedShuffle(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Replaces the items.
+     * @param items The items to draw from.
+     * @param weightOf Gives the weight of an item. A weight of 0 means the item is never drawn.
+     */
+    public void reset(Collection<? extends T> items, ToDoubleFunction<? super T> weightOf) {
+        this.weightOf = weightOf;
+        this.items.clear();
+        positions.clear();
+        copies.clear();
+        blocks.clear();
+        changedBlocks.clear();
+        // The table over the old blocks is rebuilt at the next draw, also when there are no items.
+        blockTable = null;
+        lastItem = null;
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item, with the weight the weight function gives it.
+     * @param item The item to add.
+     */
+    public void add(T item) {
+        if (copies.merge(item, 1, Integer::sum) > 1) {
+            return;
+        }
+        int position = items.size();
+        if (position == weights.length) {
+            weights = Arrays.copyOf(weights, weights.length * 2);
+        }
+        items.add(item);
+        positions.put(item, position);
+        weights[position] = weightOf.applyAsDouble(item);
+        changed(position);
+    }
+
+    /**
+     * Removes one copy of an item. When the last copy is removed, the item is no longer drawn.
+     * @param item The item to remove.
+     */
+    public void remove(T item) {
+        Integer amount = copies.get(item);
+        if (amount == null) {
+            return;
+        }
+        if (amount > 1) {
+            copies.put(item, amount - 1);
+            return;
+        }
+        copies.remove(item);
+
+        // The last item takes the place of the removed one.
+        int position = positions.remove(item);
+        int lastPosition = items.size() - 1;
+        T last = items.remove(lastPosition);
+        if (position < lastPosition) {
+            items.set(position, last);
+            positions.put(last, position);
+            weights[position] = weights[lastPosition];
+        }
+        changed(position);
+        changed(lastPosition);
+    }
+
+    /**
+     * Asks the weight function for the weight of an item again, e.g. after the song has been played.
+     * @param item The item whose weight has changed.
+     */
+    public void updateWeight(T item) {
+        Integer position = positions.get(item);
+        if (position != null) {
+            weights[position] = weightOf.applyAsDouble(item);
+            changed(position);
+        }
+    }
+
+    /**
+     * Draws an item in proportion to its weight. The item drawn last time is only drawn again
+     * if nothing else comes up in a few tries, so the same song rarely plays twice in a row.
+     * @return The item, or null if there are no items or they all weigh 0.
+     */
+    public T next() {
+        rebuildChangedBlocks();
+        if (blockTable == null || blockTable.total <= 0) {
+            return null;
+        }
+
+        T item = draw();
+        for (int i = 0; i < MAX_REDRAWS && item.equals(lastItem) && items.size() > 1; i++) {
+            item = draw();
+        }
+        lastItem = item;
+        return item;
+    }
+
+    /**
+     * @return The number of different items.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    private T draw() {
+        int block = blockTable.draw(random);
+        return items.get(block * BLOCK_SIZE + blocks.get(block).draw(random));
+    }
+
+    private void changed(int position) {
+        changedBlocks.set(position / BLOCK_SIZE);
+    }
+
+    /**
+     * Rebuilds the alias tables of the blocks that have changed, and the table over the blocks.
+     */
+    private void rebuildChangedBlocks() {
+        if (changedBlocks.isEmpty() && blockTable != null) {
+            return;
+        }
+
+        int blockAmount = (items.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        while (blocks.size() > blockAmount) {
+            blocks.remove(blocks.size() - 1);
+        }
+        for (int block = changedBlocks.nextSetBit(0); block >= 0 && block < blockAmount; block = changedBlocks.nextSetBit(block + 1)) {
+            int offset = block * BLOCK_SIZE;
+            AliasTable table = new AliasTable(weights, offset, Math.min(BLOCK_SIZE, items.size() - offset));
+            if (block < blocks.size()) {
+                blocks.set(block, table);
+            }
+            else {
+                blocks.add(table);
+            }
+        }
+        changedBlocks.clear();
+
+        double[] blockWeights = new double[blockAmount];
+        for (int block = 0; block < blockAmount; block++) {
+            blockWeights[block] = blocks.get(block).total;
+        }
+        blockTable = new AliasTable(blockWeights, 0, blockAmount);
+    }
+}
@@ -0,0 +1,416 @@
+package DAL.DB;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // A connection that was used this recently is handed out without a validation round trip.
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 10_000;
+    // The objects of a borrowed connection that can lead back to it, and are handed out wrapped.
+    private static final Set<Class<?>> WRAPPED_TYPES = Set.of(Statement.class, PreparedStatement.class,
+            CallableStatement.class, ResultSet.class, DatabaseMetaData.class);
+    // The methods that change the session, which is reset when the connection is handed back.
+    private static final Set<String> SESSION_SETTERS = Set.of("setReadOnly", "setTransactionIsolation",
+            "setCatalog", "setSchema", "setHoldability", "setTypeMap");
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionMillis;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a bounded pool on top of the given data source.
+     * @param dataSource The data source physical connections are opened from.
+     * @param maxSize The maximum number of open connections, idle and borrowed combined.
+     * @param minIdle The number of idle connections idle eviction will never go below.
+     * @param borrowTimeoutMillis How long getConnection waits for a free connection before failing.
+     * @param idleTimeoutMillis How long a connection may sit idle before it is closed.
+     * @param leakDetectionMillis How long a connection may be borrowed before it is reported as leaked, 0 to disable.
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, int minIdle, long borrowTimeoutMillis,
+                          long idleTimeoutMillis, long leakDetectionMillis) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: max " + maxSize + ", min idle " + minIdle);
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConnectionPool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_INTERVAL_MILLIS, HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle and the pool isn't full.
+     * Closing the returned connection hands it back to the pool instead of closing the physical connection.
+     * @return A validated connection.
+     * @throws SQLException If no connection could be borrowed within the borrow timeout.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection " + getStatistics());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                pooled = openConnection();
+                created.incrementAndGet();
+            }
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowedFrom = leakDetectionMillis > 0 ? new Exception("Connection borrowed here") : null;
+            borrowedConnections.add(pooled);
+            borrows.incrementAndGet();
+            return pooled.createHandle();
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns statistics about the current state and the lifetime usage of the pool.
+     * @return A snapshot of the pool statistics.
+     */
+    public PoolStatistics getStatistics() {
+        return new PoolStatistics(maxSize, idleConnections.size(), borrowedConnections.size(),
+                permits.getQueueLength(), created.get(), destroyed.get(), borrows.get(),
+                validationFailures.get(), timeouts.get(), leaks.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+    }
+
+    /**
+     * Closes all idle connections and stops the pool.
+     * Borrowed connections are closed when they are handed back.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Opens a physical connection and remembers its session settings, so they can be restored when it is handed back.
+     */
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = dataSource.getConnection();
+        try {
+            return new PooledConnection(physical);
+        }
+        catch (SQLException | RuntimeException e) {
+            physical.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, discarding any that fail validation.
+     * @return A valid idle connection, or null if there are none.
+     */
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (isValid(pooled)) {
+                return pooled;
+            }
+            validationFailures.incrementAndGet();
+            destroy(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when the user of a borrowed connection closes it.
+     * Rolls back an unfinished transaction, restores the session settings the borrower changed,
+     * and puts the connection back in the idle queue.
+     * @param pooled The connection being returned.
+     */
+    private void release(PooledConnection pooled) {
+        if (!borrowedConnections.remove(pooled)) {
+            return;
+        }
+
+        boolean reusable = !closed;
+        try {
+            if (reusable && !pooled.physical.getAutoCommit()) {
+                // Don't let an unfinished transaction leak into the next borrower.
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            if (reusable && pooled.sessionChanged) {
+                pooled.restoreSession();
+            }
+            if (reusable) {
+                pooled.physical.clearWarnings();
+            }
+        }
+        catch (SQLException e) {
+            reusable = false;
+        }
+
+        pooled.lastUsedAt = System.currentTimeMillis();
+        pooled.borrowedFrom = null;
+
+        if (reusable) {
+            idleConnections.offerFirst(pooled);
+        }
+        else {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Evicts connections that have been idle for too long and reports connections
+     * that have been borrowed for longer than the leak detection threshold.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // The least recently used connections are at the end of the deque.
+        Iterator<PooledConnection> idle = idleConnections.descendingIterator();
+        while (idle.hasNext() && idleConnections.size() > minIdle) {
+            PooledConnection pooled = idle.next();
+            if (now - pooled.lastUsedAt > idleTimeoutMillis && idleConnections.removeFirstOccurrence(pooled)) {
+                destroy(pooled);
+            }
+        }
+
+        if (leakDetectionMillis > 0) {
+            for (PooledConnection pooled : borrowedConnections) {
+                Exception borrowedFrom = pooled.borrowedFrom;
+                if (!pooled.leakReported && borrowedFrom != null && now - pooled.borrowedAt > leakDetectionMillis) {
+                    pooled.leakReported = true;
+                    leaks.incrementAndGet();
+                    System.err.println("Possible connection leak: borrowed for more than " + leakDetectionMillis + " ms");
+                    borrowedFrom.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+        }
+        destroyed.incrementAndGet();
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     * Every borrow gets its own handle, so a handle that has been closed
+     * can't affect the connection after it has been lent to someone else.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Exception borrowedFrom;
+        private volatile boolean leakReported;
+        // Set when a borrower calls one of the SESSION_SETTERS.
+        private volatile boolean sessionChanged;
+
+        // The session settings the connection was opened with.
+        private final boolean readOnly;
+        private final int transactionIsolation;
+        private final String catalog;
+        private final String schema;
+        private final int holdability;
+        private final Map<String, Class<?>> typeMap;
+
+        private PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.readOnly = physical.isReadOnly();
+            this.transactionIsolation = physical.getTransactionIsolation();
+            this.catalog = physical.getCatalog();
+            this.schema = physical.getSchema();
+            this.holdability = physical.getHoldability();
+            this.typeMap = physical.getTypeMap();
+        }
+
+        /**
+         * Restores the session settings the connection was opened with. Runs after the transaction has ended,
+         * as some drivers can't change the isolation level in the middle of one.
+         */
+        private void restoreSession() throws SQLException {
+            physical.setReadOnly(readOnly);
+            physical.setTransactionIsolation(transactionIsolation);
+            if (catalog != null) {
+                physical.setCatalog(catalog);
+            }
+            if (schema != null) {
+                physical.setSchema(schema);
+            }
+            physical.setHoldability(holdability);
+            physical.setTypeMap(typeMap);
+            sessionChanged = false;
+        }
+
+        private Connection createHandle() {
+            leakReported = false;
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean handleClosed;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!handleClosed) {
+                                handleClosed = true;
+                                release(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return handleClosed || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Pooled " + physical;
+                    }
+
+                    if (handleClosed) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    if (SESSION_SETTERS.contains(method.getName())) {
+                        sessionChanged = true;
+                    }
+                    return wrap(invokeOn(physical, method, args), method.getReturnType(), (Connection) proxy, null, null);
+                }
+            };
+
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+    }
+
+    /**
+     * Wraps a statement, result set or database metadata of a borrowed connection,
+     * so getConnection gives the handle instead of the physical connection, which would bypass the pool if closed.
+     * The objects they return are wrapped the same way, and getStatement of a result set gives the wrapped statement.
+     * @param target The object returned by the physical connection or one of its objects.
+     * @param type The declared return type of the method that returned it.
+     * @param handle The handle of the borrowed connection.
+     * @param parent The object that returned the target, e.g. the statement of a result set, or null.
+     * @param parentProxy The wrapped parent, or null.
+     * @return The wrapped object, or the target itself if it isn't one of the WRAPPED_TYPES.
+     */
+    private static Object wrap(Object target, Class<?> type, Connection handle, Object parent, Object parentProxy) {
+        if (target == null || !WRAPPED_TYPES.contains(type)) {
+            return target;
+        }
+
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + target;
+            }
+            if (method.getName().equals("getConnection") && method.getReturnType() == Connection.class) {
+                return handle;
+            }
+            Object result = invokeOn(target, method, args);
+            // The object that returned this one, e.g. getStatement of a result set, is given as it was wrapped.
+            if (result != null && result == parent) {
+                return parentProxy;
+            }
+            return wrap(result, method.getReturnType(), handle, target, proxy);
+        };
+
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package DAL.DB;
+
+import BE.PlayList;
+import BE.PlayQueue;
+import BE.Song;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures the DAOs against the in-memory database, filled with generated songs and playlists.
+ * Run with the number of songs as the first argument, e.g. 100000 (the default).
+ */
+public class DAOBenchmark {
+    private static final int PLAYLIST_AMOUNT = 100;
+    private static final int SONGS_PER_PLAYLIST = 200;
+    private static final int PAGE_SIZE = 500;
+    private static final int CREATED_SONG_AMOUNT = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int songAmount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        DatabaseConnector.useProfile(new InMemoryProfile("benchmark"));
+        DatabaseConnector databaseConnector = new DatabaseConnector();
+
+        time("Seed " + songAmount + " songs", () -> seed(databaseConnector, songAmount));
+        time("migrateToSparseRanks", () -> System.out.println("  "
+                + new PlaylistRanks(databaseConnector).migrateToSparseRanks() + " playlists"));
+
+        SongDao_DB songDAO = new SongDao_DB();
+        PlayListDAO_DB playListDAO = new PlayListDAO_DB();
+
+        time("getAllSongs", () -> System.out.println("  " + songDAO.getAllSongs().size() + " songs"));
+        time("streamSongs", () -> {
+            try (Stream<Song> songs = songDAO.streamSongs(PAGE_SIZE)) {
+                System.out.println("  " + songs.count() + " songs");
+            }
+        });
+        time("getSongsPage", () -> {
+            int pages = 0;
+            List<Song> page = songDAO.getSongsPage(0, PAGE_SIZE);
+            while (!page.isEmpty()) {
+                pages++;
+                page = songDAO.getSongsPage(page.get(page.size() - 1).getId(), PAGE_SIZE);
+            }
+            System.out.println("  " + pages + " pages");
+        });
+        time("getSongObjectFromId x10000", () -> {
+            for (int i = 1; i <= 10_000; i++) {
+                songDAO.getSongObjectFromId(1 + (i * 7919) % songAmount);
+            }
+        });
+
+        List<PlayList> playLists = playListDAO.getAllPlayLists();
+        time("getAllPlayLists", () -> System.out.println("  " + playListDAO.getAllPlayLists().size() + " playlists"));
+        time("moveTo x1000", () -> {
+            PlayList playList = playLists.get(0);
+            for (int i = 0; i < 1000; i++) {
+                playListDAO.moveTo(playList, playList.getSongAmount() - 1, i % playList.getSongAmount());
+            }
+        });
+        time("addSongToPlayList x1000", () -> {
+            PlayList playList = playLists.get(1);
+            for (int i = 1; i <= 1000; i++) {
+                Song song = songDAO.getSongObjectFromId(1 + (i * 7919) % songAmount);
+                playListDAO.addSongToPlayList(playList, song);
+                playList.addSongToPlaylist(song);
+            }
+        });
+        time("removeSOP x1000", () -> {
+            PlayList playList = playLists.get(1);
+            for (int i = 0; i < 1000; i++) {
+                //Removes from the middle, so the rows after it keep their ranks
+                int songIndex = playList.getSongAmount() / 2;
+                PlayQueue.Entry<Song> entry = playList.getEntry(songIndex);
+                playListDAO.removeSOP(playList, entry.getValue(), songIndex);
+                playList.removeSOP(entry);
+            }
+        });
+        createSongs(songDAO);
+
+        System.out.println("Pool: " + databaseConnector.getPoolStatistics());
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static void time(String name, Step step) throws Exception {
+        long start = System.nanoTime();
+        step.run();
+        System.out.printf("%s: %.1f ms%n", name, (System.nanoTime() - start) / 1_000_000.0);
+    }
+
+    /**
+     * Creates songs from small temporary files. createSongs copies them into data/songs,
+     * so the copies are deleted again afterwards, along with the temporary files.
+     */
+    private static void createSongs(SongDao_DB songDAO) throws Exception {
+        Path sourceFolder = Files.createTempDirectory("benchmark");
+        Files.createDirectories(Path.of("data", "songs"));
+        List<Song> songs = new ArrayList<>();
+        for (int i = 1; i <= CREATED_SONG_AMOUNT; i++) {
+            Path file = Files.write(sourceFolder.resolve("benchmark" + i + ".mp3"), new byte[4096]);
+            songs.add(new Song("Created " + i, "Benchmark", "Genre " + (i % 20), 180, file.toString(), ""));
+        }
+
+        List<Song> createdSongs = new ArrayList<>();
+        try {
+            time("createSongs x" + CREATED_SONG_AMOUNT, () -> createdSongs.addAll(songDAO.createSongs(songs, progress -> {})));
+        }
+        finally {
+            for (Song song : createdSongs) {
+                Files.deleteIfExists(Path.of(song.getPath()));
+            }
+            for (Song song : songs) {
+                Files.deleteIfExists(Path.of(song.getPath()));
+            }
+            Files.deleteIfExists(sourceFolder);
+        }
+    }
+
+    /**
+     * Inserts the songs and playlists directly, as createSongs would copy a file per song.
+     * The playlists are numbered 1..n like before the sparse ranks, so the migration has something to do.
+     */
+    private static void seed(DatabaseConnector databaseConnector, int songAmount) throws SQLException {
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO Songs (Title, Artist, Genre, Duration, SongPath, CoverPath) VALUES (?,?,?,?,?,?);")) {
+                for (int i = 1; i <= songAmount; i++) {
+                    statement.setString(1, "Song " + i);
+                    statement.setString(2, "Artist " + (i % 1000));
+                    statement.setString(3, "Genre " + (i % 20));
+                    statement.setInt(4, 120 + i % 240);
+                    statement.setString(5, "data/songs/song" + i + ".mp3");
+                    statement.setString(6, "");
+                    statement.addBatch();
+                    if (i % 1000 == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+
+            try (PreparedStatement playlists = connection.prepareStatement("INSERT INTO Playlists (Title, Creator) VALUES (?,?);");
+                 PreparedStatement songsInPlaylists = connection.prepareStatement(
+                         "INSERT INTO SongsInPlaylists (SongId, PlaylistId, NumberInPlaylist) VALUES (?,?,?);")) {
+                for (int playlistId = 1; playlistId <= PLAYLIST_AMOUNT; playlistId++) {
+                    playlists.setString(1, "Playlist " + playlistId);
+                    playlists.setString(2, "Benchmark");
+                    playlists.addBatch();
+                }
+                playlists.executeBatch();
+
+                for (int playlistId = 1; playlistId <= PLAYLIST_AMOUNT; playlistId++) {
+                    for (int position = 1; position <= SONGS_PER_PLAYLIST; position++) {
+                        songsInPlaylists.setInt(1, 1 + (playlistId * 31 + position * 17) % songAmount);
+                        songsInPlaylists.setInt(2, playlistId);
+                        songsInPlaylists.setInt(3, position);
+                        songsInPlaylists.addBatch();
+                    }
+                }
+                songsInPlaylists.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+}
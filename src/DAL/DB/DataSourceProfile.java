@@ -0,0 +1,47 @@
+package DAL.DB;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Describes a database the DAOs can run against, e.g. the SQL Server or an in-memory database.
+ * The few statements that have to be written differently for each database are given by the profile,
+ * so the DAOs run the same code against every database. The statements of every profile take the same parameters.
+ */
+public interface DataSourceProfile {
+    /**
+     * Creates the data source the connection pool opens connections from.
+     * @return A data source for the database.
+     * @throws SQLException If the database can't be prepared.
+     */
+    DataSource createDataSource() throws SQLException;
+
+    /**
+     * The statement that removes the song at a position in a playlist, and only that row,
+     * also when the playlist has the same song at the same rank more than once.
+     * Its parameters are the id of the playlist, the position counted from 1, and the id of the song expected there.
+     * @return The SQL of the statement.
+     */
+    String deleteSongAtPositionSql();
+
+    /**
+     * The single statement that gives the songs of a playlist evenly spaced ranks, keeping their order.
+     * Rows with the same song and rank get ranks of their own.
+     * Its parameters are the gap between two ranks and the id of the playlist.
+     * @return The SQL of the statement.
+     */
+    String rebalanceSql();
+
+    /**
+     * The statement that creates the table of smart playlist rules if it is missing. It has no parameters.
+     * @return The SQL of the statement.
+     */
+    String createRulesTableSql();
+
+    /**
+     * Tells whether many songs can be inserted with one MERGE ... OUTPUT, which reports the generated id of every source row.
+     * Otherwise the songs are inserted as a JDBC batch.
+     * @return true if the database supports MERGE ... OUTPUT.
+     */
+    boolean canInsertWithMergeOutput();
+}
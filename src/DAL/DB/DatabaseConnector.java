@@ -1,25 +1,84 @@
 package DAL.DB;
 
-import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
-import com.microsoft.sqlserver.jdbc.SQLServerException;
 import java.sql.Connection;
+import java.sql.SQLException;
 
 public class DatabaseConnector {
-    private SQLServerDataSource dataSource;
+    private static final int POOL_MAX_SIZE = 8;
+    private static final int POOL_MIN_IDLE = 1;
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * 60_000;
+    private static final long LEAK_DETECTION_MILLIS = 60_000;
+
+    // Chooses the database at startup: "sqlserver" (the default) or "memory", e.g. -Dmytunes.db.profile=memory
+    public static final String PROFILE_PROPERTY = "mytunes.db.profile";
+
+    // Shared by every DAO, so connections are reused across the whole application.
+    private static DataSourceProfile profile;
+    private static ConnectionPool connectionPool;
 
     public DatabaseConnector()
     {
-        dataSource = new SQLServerDataSource();
-        dataSource.setServerName("10.176.111.31");
-        dataSource.setDatabaseName("MYTUNES_GRUPPE2");
-        dataSource.setUser("CSe22A_18");
-        dataSource.setPassword("CSe22A_18");
-        dataSource.setTrustServerCertificate(true);
-        dataSource.setPortNumber(1433);
     }
 
-    public Connection getConnection() throws SQLServerException {
-        return dataSource.getConnection();
+    /**
+     * Switches every DAO to another database. Connections borrowed from the previous database
+     * are still closed normally, but no new ones are handed out.
+     * Should be called before the DAOs are used, e.g. at the start of a benchmark.
+     * @param newProfile The database to use.
+     */
+    public static synchronized void useProfile(DataSourceProfile newProfile) {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+        profile = newProfile;
+    }
+
+    /**
+     * Returns the shared connection pool, creating it on first use.
+     */
+    private static synchronized ConnectionPool getConnectionPool() throws SQLException {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(currentProfile().createDataSource(), POOL_MAX_SIZE, POOL_MIN_IDLE,
+                    BORROW_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS, LEAK_DETECTION_MILLIS);
+        }
+        return connectionPool;
+    }
+
+    private static synchronized DataSourceProfile currentProfile() {
+        if (profile == null) {
+            String name = System.getProperty(PROFILE_PROPERTY, "sqlserver");
+            profile = "memory".equalsIgnoreCase(name) ? new InMemoryProfile() : new SqlServerProfile();
+        }
+        return profile;
+    }
+
+    /**
+     * Borrows a connection from the connection pool.
+     * Closing the connection returns it to the pool.
+     * @return A connection to the database.
+     * @throws SQLException If no connection could be borrowed.
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * Returns the profile of the database, which gives the statements written differently for each database.
+     * @return The profile in use.
+     */
+    public DataSourceProfile getProfile() {
+        return currentProfile();
+    }
+
+    /**
+     * Returns the statistics of the shared connection pool.
+     * @return A snapshot of the pool statistics.
+     * @throws SQLException If the pool could not be created.
+     */
+    public PoolStatistics getPoolStatistics() throws SQLException {
+        return getConnectionPool().getStatistics();
     }
 
     /**
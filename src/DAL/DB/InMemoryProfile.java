@@ -0,0 +1,110 @@
+package DAL.DB;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * An embedded H2 database kept in memory, created with the same tables as the SQL Server.
+ * It is empty at the start and gone when the program stops, so it is meant for
+ * trying out and measuring the DAOs without the real server.
+ */
+public class InMemoryProfile implements DataSourceProfile {
+    private final String databaseName;
+
+    public InMemoryProfile() {
+        this("mytunes");
+    }
+
+    /**
+     * @param databaseName Profiles with the same name share the same in-memory database.
+     */
+    public InMemoryProfile(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    /**
+     * Creates the in-memory database and its tables.
+     * The database stays open until the program stops, even when no connections are open.
+     * @return A data source for the in-memory database.
+     * @throws SQLException If it fails to create the tables.
+     */
+    @Override
+    public DataSource createDataSource() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + databaseName + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1");
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : readSchema().split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * H2 can't delete through a CTE, so the row at the position is merged away by its row id.
+     * The playlist and the rank let H2 find the row by index.
+     */
+    @Override
+    public String deleteSongAtPositionSql() {
+        return "MERGE INTO SongsInPlaylists t USING (SELECT RowKey, PlaylistId, OldRank FROM " +
+                "(SELECT _ROWID_ AS RowKey, PlaylistId, SongId, NumberInPlaylist AS OldRank, " +
+                "ROW_NUMBER() OVER (ORDER BY NumberInPlaylist, SongId) AS Position " +
+                "FROM SongsInPlaylists WHERE PlaylistId = ?) Ordered WHERE Position = ? AND SongId = ?) o " +
+                "ON t.PlaylistId = o.PlaylistId AND t.NumberInPlaylist = o.OldRank AND t._ROWID_ = o.RowKey " +
+                "WHEN MATCHED THEN DELETE;";
+    }
+
+    /**
+     * H2 can't update through a CTE, so the new ranks are merged into the rows by their row id,
+     * which also tells apart rows with the same song and rank. The playlist and the old rank let H2 find the rows by index.
+     */
+    @Override
+    public String rebalanceSql() {
+        return "MERGE INTO SongsInPlaylists t USING (SELECT _ROWID_ AS RowKey, PlaylistId, NumberInPlaylist AS OldRank, " +
+                "ROW_NUMBER() OVER (ORDER BY NumberInPlaylist, SongId) * ? AS NewRank " +
+                "FROM SongsInPlaylists WHERE PlaylistId = ?) o " +
+                "ON t.PlaylistId = o.PlaylistId AND t.NumberInPlaylist = o.OldRank AND t._ROWID_ = o.RowKey " +
+                "WHEN MATCHED AND t.NumberInPlaylist <> o.NewRank THEN UPDATE SET NumberInPlaylist = o.NewRank;";
+    }
+
+    @Override
+    public String createRulesTableSql() {
+        return "CREATE TABLE IF NOT EXISTS SmartPlaylistRules " +
+                "(PlaylistId INT PRIMARY KEY REFERENCES Playlists (Id) ON DELETE CASCADE, " +
+                "SongQuery NVARCHAR(1000) NOT NULL);";
+    }
+
+    /**
+     * H2 has no OUTPUT clause.
+     */
+    @Override
+    public boolean canInsertWithMergeOutput() {
+        return false;
+    }
+
+    /**
+     * Reads schema.sql, which lies next to this class.
+     */
+    private static String readSchema() throws SQLException {
+        try (InputStream in = InMemoryProfile.class.getResourceAsStream("schema.sql")) {
+            if (in == null) {
+                throw new SQLException("schema.sql was not found");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new SQLException("Failed to read schema.sql", e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package DAL.DB;
 
 import BE.PlayList;
+import BE.PlayQueue;
 import BE.Song;
 import DAL.Interfaces.IPlaylistDAO;
 import DAL.Interfaces.ISongDAO;
@@ -11,37 +12,71 @@ import java.util.*;
 public class PlayListDAO_DB implements IPlaylistDAO {
     private DatabaseConnector databaseConnector;
     private ISongDAO songDAO;
+    private PlaylistRanks playlistRanks;
+    // The playlists are migrated to sparse ranks the first time they are loaded.
+    private static volatile boolean ranksMigrated;
+    // The table of smart playlist rules is created the first time the playlists are loaded, if it is missing.
+    private static volatile boolean rulesTableCreated;
 
     public PlayListDAO_DB(){
         databaseConnector = new DatabaseConnector();
         songDAO = new SongDao_DB();
+        playlistRanks = new PlaylistRanks(databaseConnector);
     }
 
     /**
      * Return a list of PlayList objects from the database.
+     * The playlists and the songs in them are read with a single query, already in playlist order,
+     * so every playlist is built in one pass over the result set.
+     * Smart playlists are returned with their rule and without songs, as their songs are found by the rule.
      * @return A list of all Playlists.
      * @throws Exception throws exception if it fails to return a list of Playlist objects.
      */
     public List<PlayList> getAllPlayLists() throws Exception {
         ArrayList<PlayList> allPlayList = new ArrayList<>();
 
+        if (!ranksMigrated) {
+            playlistRanks.migrateToSparseRanks();
+            ranksMigrated = true;
+        }
+        if (!rulesTableCreated) {
+            createRulesTableIfMissing();
+            rulesTableCreated = true;
+        }
+
+        // The LEFT JOINs keep playlists without songs or rules, and the ordering keeps every playlist's rows together.
+        String sql = "SELECT p.Id, p.Title, r.SongQuery, sip.SongId " +
+                "FROM Playlists p LEFT JOIN SmartPlaylistRules r ON r.PlaylistId = p.Id " +
+                "LEFT JOIN SongsInPlaylists sip ON sip.PlaylistId = p.Id " +
+                "ORDER BY p.Id, sip.NumberInPlaylist, sip.SongId;";
+
         try(Connection connection = databaseConnector.getConnection();
-            Statement statement = connection.createStatement()) {
-            String sql = "SELECT * FROM Playlists;";
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(sql)) {
 
-            ResultSet rs = statement.executeQuery(sql);
+            PlayList playList = null;
 
             // Loop through rows from database result set
             while(rs.next()){
-                //map database row to object
                 int playListId = rs.getInt("Id");
-                String title = rs.getString("Title");
 
-                PlayList playList = new PlayList(playListId, title);
+                // The first row of a new playlist.
+                if (playList == null || playList.getPlayListId() != playListId) {
+                    //map database row to object
+                    String title = rs.getString("Title");
+                    playList = new PlayList(playListId, title);
+                    playList.setSmartRule(rs.getString("SongQuery"));
+                    allPlayList.add(playList);
+                }
 
-                allPlayList.add(playList);
+                int songIdFromDB = rs.getInt("SongId");
+                // A playlist without songs has a single row with no song.
+                if (rs.wasNull() || playList.isSmart()) {
+                    continue;
+                }
 
-                readAllSongsInPlayList(playList);
+                // The rows arrive in playlist order, so the song goes at the end.
+                playList.addSongToPlaylist(songDAO.getSongObjectFromId(songIdFromDB));
             }
 
             return allPlayList;
@@ -52,153 +87,162 @@ public class PlayListDAO_DB implements IPlaylistDAO {
     }
 
     /**
-     * Adds all the songs that should be in
-     * this playlist, to the playlist object.
-     * @param playList The playlist to get songs from ID, and add songs to.
-     * @throws Exception If it fails to retrieve the songs in this playlist.
+     * Reads the songs of a playlist in order.
+     * @param playList The playlist.
+     * @return The songs of the playlist.
+     * @throws Exception If it fails to read the songs.
      */
-    private void readAllSongsInPlayList(PlayList playList) throws Exception {
-        String sql = "SELECT * FROM SongsInPlaylists WHERE PlaylistId = ?;";
-
-        try(Connection connection = databaseConnector.getConnection();
-            PreparedStatement statement = connection.prepareStatement(sql)) {
+    public List<Song> getSongsInPlayList(PlayList playList) throws Exception {
+        String sql = "SELECT SongId FROM SongsInPlaylists WHERE PlaylistId = ? ORDER BY NumberInPlaylist, SongId;";
+        List<Song> songs = new ArrayList<>();
 
-            // Bind parameters
+        try (Connection connection = databaseConnector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            //Bind parameters
             statement.setInt(1, playList.getPlayListId());
 
-            ResultSet rs = statement.executeQuery();
-
-            // We use these lists to sort the correct order of the song.
-            ArrayList<Integer> tempSongsId = new ArrayList<>();
-            ArrayList<Integer> tempOrders = new ArrayList<>();
-            ArrayList<Integer> properOrder = new ArrayList<>();
-
-            // Loop through rows from database result set
-            while(rs.next()){
-                // Map database row to object
-                int songIdFromDB = rs.getInt("SongId");
-                int songPlacement = rs.getInt("NumberInPlaylist");
-
-                //we use the 3 list to keep track of the data from the table SongInPlaylist.
-                //The list are used to sort the songs placement in the playlist.
-                tempSongsId.add(songIdFromDB);
-                tempOrders.add(songPlacement);
-                properOrder.add(songPlacement);
-            }
-
-            // Sort the list to the correct order.
-            Collections.sort(properOrder);
-
-            sortSongsList(playList, tempSongsId, tempOrders, properOrder);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            throw new Exception("Failed to retrieve songs in playlist", e);
-        }
-    }
-
-    /**
-     * Helper method to readAllSongsInPlaylist.
-     * Adds all the required songs to the playlist in the
-     * correct order.
-     * @param playList The playlist to add songs to.
-     * @param unsortedSongIds The unsorted list of song IDs.
-     * @param unsortedSongOrders The unsorted list of song placements (indexes have to match those in unsortedSongIds).
-     * @param sortedSongOrders The sorted list of song placements.
-     * @throws Exception If it fails to sort the songs.
-     */
-    private void sortSongsList(PlayList playList,
-                                     List<Integer> unsortedSongIds,
-                                     List<Integer> unsortedSongOrders,
-                                     List<Integer> sortedSongOrders) throws Exception{
-        try {
-            for (int i : sortedSongOrders) {
-                // Finds the song id of the next song in the list.
-                int songId = unsortedSongIds.get(unsortedSongOrders.indexOf(i));
-
-                // Returns a song object from given song id.
-                Song song =  songDAO.getSongObjectFromId(songId);
-
-                // Adds the song object to the playlist object.
-                playList.addSongToPlaylist(song);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    songs.add(songDAO.getSongObjectFromId(rs.getInt("SongId")));
+                }
             }
+            return songs;
         }
-        catch (Exception e) {
+        catch (SQLException e) {
             e.printStackTrace();
-            throw new Exception("Failed to sort songs in playlist", e);
+            throw new Exception("Failed to retrieve the songs of the playlist", e);
         }
     }
 
     /**
-     * Adds a song to a playlist.
+     * Adds a song to the end of a playlist.
+     * The song gets a rank one gap after the current last song. The playlist is locked first, like in moveTo,
+     * so two songs added at the same time never get the same rank. When the ranks have grown so high that there
+     * is no gap left after the last song, the playlist is rebalanced first.
      * @param playList The playlist to add a song to.
      * @param song The song to add to the playlist.
      * @throws Exception If it fails to add the song to the playlist.
      */
     public void addSongToPlayList(PlayList playList, Song song) throws Exception{
         String sql = "INSERT INTO SongsInPlaylists (SongId, PlaylistId, NumberInPlaylist) VALUES (?,?,?);";
+        int playlistId = playList.getPlayListId();
 
-        try(Connection connection = databaseConnector.getConnection();
-            PreparedStatement statement = connection.prepareStatement(sql))
-        {
-            //Parameters
-            int songID = song.getId();
-            int playlistId = playList.getPlayListId();
-            int songPlacement = playList.getSongAmount() + 1;
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
 
-            //Bind parameters
-            statement.setInt(1, songID);
-            statement.setInt(2, playlistId);
-            statement.setInt(3, songPlacement);
+            try {
+                if (!PlaylistRanks.lockPlaylist(connection, playlistId)) {
+                    throw new SQLException("The playlist no longer exists");
+                }
+                int lastRank = readLastRank(connection, playlistId);
+                if (lastRank > Integer.MAX_VALUE - PlaylistRanks.RANK_GAP) {
+                    playlistRanks.rebalance(connection, playlistId);
+                    lastRank = readLastRank(connection, playlistId);
+                    if (lastRank > Integer.MAX_VALUE - PlaylistRanks.RANK_GAP) {
+                        throw new SQLException("The playlist is full");
+                    }
+                }
 
-            //Run the specified SQL statement
-            statement.executeUpdate();
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    //Bind parameters
+                    statement.setInt(1, song.getId());
+                    statement.setInt(2, playlistId);
+                    statement.setInt(3, lastRank + PlaylistRanks.RANK_GAP);
+
+                    //Run the specified SQL statement
+                    statement.executeUpdate();
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             throw new Exception("Failed to add new song", e);
         }
     }
 
+    /**
+     * Helper method to addSongToPlayList.
+     * @param connection The connection of the current transaction.
+     * @param playlistId The id of the playlist.
+     * @return The rank of the last song in the playlist, or 0 if it is empty.
+     * @throws SQLException If it fails to read the rank.
+     */
+    private int readLastRank(Connection connection, int playlistId) throws SQLException {
+        String sql = "SELECT COALESCE(MAX(NumberInPlaylist), 0) AS LastRank FROM SongsInPlaylists WHERE PlaylistId = ?;";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            //Bind parameters
+            statement.setInt(1, playlistId);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getInt("LastRank");
+            }
+        }
+    }
+
     /**
      * remove the song from the playlist in the database, based in the id of the given Playlist and Song object.
+     * Only the song's own row is deleted, the ranks of the other songs keep their order.
      * @param playList last selected playlist
      * @param song last selected song
+     * @param songIndex the position of the song in the playlist.
      * @throws Exception if it fails to remove song from playlist.
      */
-    public void removeSOP(PlayList playList, Song song) throws Exception {
-        String sql = "DELETE FROM SongsInPlaylists WHERE SongId = ? AND PlaylistId = ?;";
+    public void removeSOP(PlayList playList, Song song, int songIndex) throws Exception {
+        // Deletes the row at the song's position in the playlist, written differently for each database.
+        String sql = databaseConnector.getProfile().deleteSongAtPositionSql();
+
+        int songPlacement = songIndex + 1;
+        int removed;
 
         try (Connection connection = databaseConnector.getConnection();
              PreparedStatement statement = connection.prepareStatement(sql)) {
-
             //Bind parameters
-            statement.setInt(1, song.getId());
-            statement.setInt(2, playList.getPlayListId());
+            statement.setInt(1, playList.getPlayListId());
+            statement.setInt(2, songPlacement);
+            statement.setInt(3, song.getId());
 
             //Run the specified SQL Statement
-            statement.executeUpdate();
-
-            updateSOPPosition(playList, song);
+            removed = statement.executeUpdate();
         }
         catch (SQLException e) {
             e.printStackTrace();
             throw new Exception("Failed to remove song", e);
         }
+
+        if (removed != 1) {
+            throw new Exception("The song is no longer at position " + songPlacement + " in the playlist");
+        }
     }
 
     /**
-     * It edits the title of the playlist in the database, that matches the id of the Playlist object.
+     * It edits the title and the smart playlist rule of the playlist in the database, that matches the id of the Playlist object.
      * @param playList last selected playlist.
      * @throws Exception if it fails to edit the database.
      */
     public void updatePlayList(PlayList playList) throws Exception {
         String sql = "UPDATE Playlists SET Title = ? WHERE Id = ?;";
-        try (Connection connection = databaseConnector.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
 
-            statement.setString(1, playList.getTitle());
-            statement.setInt(2, playList.getPlayListId());
-            //Run the specified SQL Statement
-            statement.executeUpdate();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, playList.getTitle());
+                statement.setInt(2, playList.getPlayListId());
+                //Run the specified SQL Statement
+                statement.executeUpdate();
+
+                saveRule(connection, playList.getPlayListId(), playList.getSmartRule());
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
         }
         catch (SQLException e) {
             e.printStackTrace();
@@ -239,29 +283,39 @@ public class PlayListDAO_DB implements IPlaylistDAO {
     public PlayList createPlayList(PlayList playList) throws Exception {
         String sql = "INSERT INTO Playlists(Title, Creator) VALUES (?,?);";
 
-        try (Connection connection = databaseConnector.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
 
-            //Bind parameters
-            statement.setString(1, playList.getTitle());
-            statement.setString(2, playList.getCreatorName());
+            try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                //Bind parameters
+                statement.setString(1, playList.getTitle());
+                statement.setString(2, playList.getCreatorName());
 
-            //Run the specified SQL Statement
-            statement.executeUpdate();
+                //Run the specified SQL Statement
+                statement.executeUpdate();
 
-            //Get the generated Id from the DB
-            ResultSet rs = statement.getGeneratedKeys();
-            int id = 0;
+                //Get the generated Id from the DB
+                ResultSet rs = statement.getGeneratedKeys();
+                int id = 0;
 
-            if(rs.next()){
-                id = rs.getInt(1);
-            }
+                if(rs.next()){
+                    id = rs.getInt(1);
+                }
 
-            //new playlist variables.
-            String title = playList.getTitle();
-            String creator = playList.getCreatorName();
-            PlayList newPlaylist = new PlayList(id, title, creator);
-            return newPlaylist;
+                saveRule(connection, id, playList.getSmartRule());
+                connection.commit();
+
+                //new playlist variables.
+                String title = playList.getTitle();
+                String creator = playList.getCreatorName();
+                PlayList newPlaylist = new PlayList(id, title, creator);
+                newPlaylist.setSmartRule(playList.getSmartRule());
+                return newPlaylist;
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
         }
         catch (SQLException e) {
             e.printStackTrace();
@@ -270,116 +324,193 @@ public class PlayListDAO_DB implements IPlaylistDAO {
     }
 
     /**
-     * the method handles and prepares the variables it needs to call the swapSongPlacement method.
-     * It will also determine if the song is moved up or down based on the boolean in its parameters.
-     * @param playList the playlist the song is moved in.
-     * @param song the song that is moved.
-     * @param moveUp the direction the song should be moved.
-     * @throws Exception if it fails to move song in the database.
+     * Replaces the smart playlist rule of a playlist. A playlist without a rule has no row.
+     * @param connection The connection of the current transaction.
+     * @param playlistId The id of the playlist.
+     * @param rule The rule, or null or blank if the playlist isn't a smart playlist.
+     * @throws SQLException If it fails to save the rule.
      */
-    public void moveSOP(PlayList playList, Song song, Boolean moveUp) throws Exception {
+    private void saveRule(Connection connection, int playlistId, String rule) throws SQLException {
+        String deleteSql = "DELETE FROM SmartPlaylistRules WHERE PlaylistId = ?;";
+        String insertSql = "INSERT INTO SmartPlaylistRules (PlaylistId, SongQuery) VALUES (?, ?);";
 
-        List<Song> songList = playList.getAllSongsInPlaylist();
-
-        int songIndex = songList.indexOf(song);
-
-        int playlistId = playList.getPlayListId();
+        try (PreparedStatement delete = connection.prepareStatement(deleteSql)) {
+            delete.setInt(1, playlistId);
+            delete.executeUpdate();
+        }
 
-        int songId = song.getId();
+        if (rule == null || rule.isBlank()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+            insert.setInt(1, playlistId);
+            insert.setString(2, rule);
+            insert.executeUpdate();
+        }
+    }
 
-        //the chosen song gets moved up
-        if (moveUp && (songIndex != 0)) {
-            int previousSongIndex = songList.indexOf(song)-1;
-            Song previousSong = playList.getAllSongsInPlaylist().get(previousSongIndex);
+    /**
+     * Creates the table of smart playlist rules in databases made before smart playlists existed.
+     * @throws Exception If it fails to create the table.
+     */
+    private void createRulesTableIfMissing() throws Exception {
+        String sql = databaseConnector.getProfile().createRulesTableSql();
 
-            int previousSongId = previousSong.getId();
+        try (Connection connection = databaseConnector.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to create the table of smart playlist rules", e);
+        }
+    }
 
-            swapSongPlacement(playlistId, songId, previousSongId, (songIndex), previousSongIndex+2);
+    /**
+     * the method finds the position of the song, and moves it one step with moveTo.
+     * It will also determine if the song is moved up or down based on the boolean in its parameters.
+     * @param playList the playlist the song is moved in.
+     * @param entry the place of the song that is moved.
+     * @param moveUp the direction the song should be moved.
+     * @throws Exception if it fails to move song in the database.
+     */
+    public void moveSOP(PlayList playList, PlayQueue.Entry<Song> entry, Boolean moveUp) throws Exception {
+        int songIndex = playList.indexOf(entry);
 
-            songList.set(songIndex, previousSong);
-            songList.set(previousSongIndex, song);
+        //the chosen song gets moved up
+        if (moveUp && songIndex > 0) {
+            moveTo(playList, songIndex, songIndex - 1);
         }
         //the chosen song gets moved down
-        if (!moveUp && ((songIndex+1) != songList.size())) {
-            int nextSongIndex = songList.indexOf(song)+1;
-
-            Song nextSong = songList.get(nextSongIndex);
-
-            int nextSongId = nextSong.getId();
-            swapSongPlacement(playlistId, songId, nextSongId, (songIndex +2), nextSongIndex);
-
-            songList.set(songIndex, nextSong);
-            songList.set(nextSongIndex, song);
+        if (!moveUp && songIndex != -1 && songIndex + 1 < playList.getSongAmount()) {
+            moveTo(playList, songIndex, songIndex + 1);
         }
     }
 
     /**
-     *The methods function is to move 2 song objects, based on the parameters it is given.
-     * first it edits the position of the chosenSong, then it edits the position of the pushedSong.
-     * This way the data does not overlap in the database.
-     * @param playlistId The id of the effected playlist.
-     * @param chosenSongId the id of the song that got moved.
-     * @param pushedSongId the id of the song that got pushed.
-     * @param chosenSongNP the new position of the song that got moved.
-     * @param pushedSongNP the new position of the song that got pushed.
-     * @throws Exception if it fails to move the song-
+     * Moves the song at one position in the playlist to another position.
+     * The song gets a rank between its new neighbours, so only its own row is updated.
+     * @param playList the playlist the song is moved in.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @throws Exception if it fails to move the song.
      */
-    private void swapSongPlacement(int playlistId, int chosenSongId, int pushedSongId, int chosenSongNP, int pushedSongNP) throws Exception {
-        String sql = "UPDATE SongsInPlaylists SET NumberInplaylist = ? WHERE PlaylistId = ? AND SongId = ?;";
-        try (Connection connection = databaseConnector.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-                //Bind parameters of chosenSong
-                statement.setInt(1, chosenSongNP);
-                statement.setInt(2, playlistId);
-                statement.setInt(3, chosenSongId);
-                //Run the specified SQL Statement and move the chosenSong
-                statement.executeUpdate();
-                //Bind parameters of pushedSong
-                statement.setInt(1, pushedSongNP);
-                statement.setInt(2, playlistId);
-                statement.setInt(3, pushedSongId);
-                //Run the specified SQL Statement and move the pushedSong
-                statement.executeUpdate();
+    public void moveTo(PlayList playList, int fromIndex, int toIndex) throws Exception {
+        // Positions past the end are caught by readRanks, which reads the playlist as it is in the database.
+        if (fromIndex < 0 || toIndex < 0) {
+            throw new Exception("Can't move song from position " + (fromIndex + 1) + " to " + (toIndex + 1));
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+
+        // The positions of the songs the moved song ends up between, -1 or the playlist size if there are none.
+        int beforeIndex = fromIndex < toIndex ? toIndex : toIndex - 1;
+        int afterIndex = beforeIndex + 1;
+        int playlistId = playList.getPlayListId();
+
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
+            boolean crowded;
+
+            try {
+                // A rebalance in the background waits until this move is committed, and the other way around.
+                if (!PlaylistRanks.lockPlaylist(connection, playlistId)) {
+                    throw new SQLException("The playlist no longer exists");
+                }
+                int[] ranks = readRanks(connection, playlistId, fromIndex, beforeIndex, afterIndex);
+                int newRank = PlaylistRanks.rankBetween(ranks[1], ranks[2]);
+
+                // There is no free rank between the neighbours, so the playlist is rebalanced first.
+                if (newRank == -1) {
+                    playlistRanks.rebalance(connection, playlistId);
+                    ranks = readRanks(connection, playlistId, fromIndex, beforeIndex, afterIndex);
+                    newRank = PlaylistRanks.rankBetween(ranks[1], ranks[2]);
+                }
+                crowded = PlaylistRanks.isCrowded(ranks[1], newRank, ranks[2]);
+
+                // The row is found by its song as well as its rank, so a row that shares the rank is never moved with it.
+                String sql = "UPDATE SongsInPlaylists SET NumberInPlaylist = ? " +
+                        "WHERE PlaylistId = ? AND SongId = ? AND NumberInPlaylist = ?;";
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    //Bind parameters
+                    statement.setInt(1, newRank);
+                    statement.setInt(2, playlistId);
+                    statement.setInt(3, ranks[3]);
+                    statement.setInt(4, ranks[0]);
+
+                    //Run the specified SQL Statement
+                    if (statement.executeUpdate() != 1) {
+                        throw new SQLException("The playlist has changed since it was read, reload it and try again");
+                    }
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+
+            if (crowded) {
+                playlistRanks.scheduleRebalance(playlistId);
+            }
         }
         catch (SQLException e) {
             e.printStackTrace();
-            throw new Exception("Failed to swap song", e);
+            throw new Exception("Failed to move song", e);
         }
     }
 
     /**
-     * update the position in the database if a song have been deleted
-     * @param playList the playlist that had a song deleted
-     * @param song the song that got deleted
-     * @throws Exception if it fails to update position of songs.
+     * Reads the ranks of the songs at three positions in a playlist.
+     * @param connection The connection of the current transaction.
+     * @param playlistId The id of the playlist.
+     * @param songIndex The index of the moved song.
+     * @param beforeIndex The index of the song before the new position, or -1.
+     * @param afterIndex The index of the song after the new position, or the playlist size.
+     * @return The rank of the song, the rank before it, the rank after it, and the id of the song.
+     * A missing song before counts as rank 0, and a missing song after counts as one gap past the song before.
+     * @throws SQLException If it fails to read the ranks.
      */
-    public void updateSOPPosition(PlayList playList, Song song) throws Exception{
-        int songIndex = playList.getAllSongsInPlaylist().indexOf(song);
-        //checks if it is the last song in the playlist, because if it is it dosnt need to do anything.
-        if (songIndex+1 != playList.getAllSongsInPlaylist().size()){
-            //sql query
-            String sql = "UPDATE SongsInPlaylists SET NumberInplaylist = ? WHERE PlaylistId = ? AND SongId = ?;";
-            try (Connection connection = databaseConnector.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
-                //loops trough all the songs in the playlist.
-                for (Song song1:playList.getAllSongsInPlaylist()){
-
-                    int allSongIndex = playList.getAllSongsInPlaylist().indexOf(song1);
-                    //checks if the song is above the deleted song
-                    if (allSongIndex>=songIndex){
-                        //Bind parameters of chosenSong
-                        statement.setInt(1, allSongIndex);
-                        statement.setInt(2, playList.getPlayListId());
-                        statement.setInt(3, song1.getId());
-                        //Run the specified SQL Statement and move the chosenSong
-                        statement.executeUpdate();
+    private int[] readRanks(Connection connection, int playlistId, int songIndex, int beforeIndex, int afterIndex) throws SQLException {
+        String sql = "WITH Ordered AS (SELECT SongId, NumberInPlaylist, " +
+                "ROW_NUMBER() OVER (ORDER BY NumberInPlaylist, SongId) - 1 AS Position " +
+                "FROM SongsInPlaylists WHERE PlaylistId = ?) " +
+                "SELECT Position, SongId, NumberInPlaylist FROM Ordered WHERE Position IN (?, ?, ?);";
+
+        int[] ranks = {-1, beforeIndex == -1 ? 0 : -1, -1, -1};
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            //Bind parameters
+            statement.setInt(1, playlistId);
+            statement.setInt(2, songIndex);
+            statement.setInt(3, beforeIndex);
+            statement.setInt(4, afterIndex);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    int position = rs.getInt("Position");
+                    int rank = rs.getInt("NumberInPlaylist");
+
+                    if (position == songIndex) {
+                        ranks[0] = rank;
+                        ranks[3] = rs.getInt("SongId");
                     }
+                    if (position == beforeIndex) ranks[1] = rank;
+                    if (position == afterIndex) ranks[2] = rank;
                 }
             }
-            catch (SQLException e) {
-                e.printStackTrace();
-                throw new Exception("Failed to update song position", e);
-            }
         }
+
+        if (ranks[0] == -1) {
+            throw new SQLException("The playlist has changed, the song is no longer at position " + (songIndex + 1));
+        }
+        if (ranks[1] == -1) {
+            throw new SQLException("The playlist has changed, it no longer has a position " + (beforeIndex + 1));
+        }
+        if (ranks[2] == -1) {
+            ranks[2] = ranks[1] + 2 * PlaylistRanks.RANK_GAP;
+        }
+        return ranks;
     }
 }
@@ -0,0 +1,187 @@
+package DAL.DB;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NumberInPlaylist is a sparse rank: the songs are ordered by it, but the numbers have gaps
+ * between them. A song can then be inserted or moved between two others by giving it a
+ * number in the gap, without renumbering the rest of the playlist.
+ * When a gap runs out, the playlist is rebalanced so the gaps are even again.
+ */
+public class PlaylistRanks {
+    // The distance between two neighbouring songs after a rebalance.
+    public static final int RANK_GAP = 1024;
+    // Playlists with a gap smaller than this are rebalanced.
+    private static final int MIN_GAP = 2;
+
+    // Rebalances run one at a time in the background, and a playlist is only queued once.
+    private static final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "PlaylistRanks-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<Integer> queuedPlaylists = ConcurrentHashMap.newKeySet();
+
+    private DatabaseConnector databaseConnector;
+
+    public PlaylistRanks(DatabaseConnector databaseConnector) {
+        this.databaseConnector = databaseConnector;
+    }
+
+    /**
+     * Returns the rank halfway between two neighbouring ranks.
+     * @param before The rank of the song before, or 0 if there is none.
+     * @param after The rank of the song after.
+     * @return The rank between them, or -1 if there is no free rank between them.
+     */
+    public static int rankBetween(int before, int after) {
+        if (after - before < 2) {
+            return -1;
+        }
+        return before + (after - before) / 2;
+    }
+
+    /**
+     * Checks if a new rank is so close to one of its neighbours that the
+     * next insert next to it would need a rebalance.
+     */
+    public static boolean isCrowded(int before, int rank, int after) {
+        return rank - before < MIN_GAP || after - rank < MIN_GAP;
+    }
+
+    /**
+     * Locks the row of a playlist until the transaction ends. Moves and rebalances take this lock first,
+     * so they change the ranks of a playlist one at a time, and a move never works from ranks a rebalance is changing.
+     * @param connection The connection of the current transaction.
+     * @param playlistId The id of the playlist.
+     * @return false if the playlist doesn't exist.
+     * @throws SQLException If it fails to lock the playlist.
+     */
+    public static boolean lockPlaylist(Connection connection, int playlistId) throws SQLException {
+        // Updating the row locks it in every database, where a locking read is written differently in each.
+        String sql = "UPDATE Playlists SET Title = Title WHERE Id = ?;";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, playlistId);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Gives the songs in a playlist evenly spaced ranks, keeping their order, with a single statement.
+     * @param connection The connection to use, so it can be part of a transaction.
+     * @param playlistId The id of the playlist.
+     * @throws SQLException If it fails to rebalance the playlist.
+     */
+    public void rebalance(Connection connection, int playlistId) throws SQLException {
+        // Written differently for each database, see DataSourceProfile.rebalanceSql.
+        String sql = databaseConnector.getProfile().rebalanceSql();
+
+        lockPlaylist(connection, playlistId);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            //Bind parameters
+            statement.setInt(1, RANK_GAP);
+            statement.setInt(2, playlistId);
+
+            //Run the specified SQL Statement
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Queues a rebalance of the playlist on the background thread.
+     * @param playlistId The id of the playlist.
+     */
+    public void scheduleRebalance(int playlistId) {
+        if (!queuedPlaylists.add(playlistId)) {
+            return;
+        }
+
+        rebalancer.execute(() -> {
+            queuedPlaylists.remove(playlistId);
+            try (Connection connection = databaseConnector.getConnection()) {
+                connection.setAutoCommit(false);
+                rebalance(connection, playlistId);
+                connection.commit();
+            }
+            catch (SQLException e) {
+                // The ranks are still correct, just crowded, so the next move will rebalance instead.
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Finds the playlists whose ranks are not usable as sparse ranks:
+     * playlists with two songs sharing a rank, a rank below 1, or gaps too small to insert into.
+     * Playlists still using the old 1..n numbering are found by this as well.
+     * @return The ids of the playlists that need a rebalance.
+     * @throws Exception If it fails to check the playlists.
+     */
+    public List<Integer> findInconsistentPlaylists() throws Exception {
+        String sql = "WITH Gaps AS (SELECT PlaylistId, NumberInPlaylist - " +
+                "LAG(NumberInPlaylist, 1, 0) OVER (PARTITION BY PlaylistId ORDER BY NumberInPlaylist) AS Gap " +
+                "FROM SongsInPlaylists) " +
+                "SELECT DISTINCT PlaylistId FROM Gaps WHERE Gap < ?;";
+
+        try (Connection connection = databaseConnector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, MIN_GAP);
+
+            List<Integer> playlistIds = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    playlistIds.add(rs.getInt("PlaylistId"));
+                }
+            }
+            return playlistIds;
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to check the order of the playlists", e);
+        }
+    }
+
+    /**
+     * Migrates playlists from the old dense 1..n numbering (or any inconsistent numbering)
+     * to sparse ranks. Playlists that already have usable ranks are not touched,
+     * so it is safe to run more than once.
+     * @return The number of playlists that were rebalanced.
+     * @throws Exception If it fails to migrate the playlists.
+     */
+    public int migrateToSparseRanks() throws Exception {
+        List<Integer> playlistIds = findInconsistentPlaylists();
+        if (playlistIds.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                for (int playlistId : playlistIds) {
+                    rebalance(connection, playlistId);
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to migrate the order of the playlists", e);
+        }
+        return playlistIds.size();
+    }
+}
@@ -0,0 +1,68 @@
+package DAL.DB;
+
+public class PoolStatistics {
+    private final int maxSize;
+    private final int idle;
+    private final int active;
+    private final int waiting;
+    private final long created;
+    private final long destroyed;
+    private final long borrows;
+    private final long validationFailures;
+    private final long timeouts;
+    private final long leaks;
+    private final long totalWaitMillis;
+
+    public PoolStatistics(int maxSize, int idle, int active, int waiting, long created, long destroyed,
+                          long borrows, long validationFailures, long timeouts, long leaks, long totalWaitMillis) {
+        this.maxSize = maxSize;
+        this.idle = idle;
+        this.active = active;
+        this.waiting = waiting;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.borrows = borrows;
+        this.validationFailures = validationFailures;
+        this.timeouts = timeouts;
+        this.leaks = leaks;
+        this.totalWaitMillis = totalWaitMillis;
+    }
+
+    public int getMaxSize() { return maxSize; }
+
+    public int getIdle() { return idle; }
+
+    public int getActive() { return active; }
+
+    public int getWaiting() { return waiting; }
+
+    public long getCreated() { return created; }
+
+    public long getDestroyed() { return destroyed; }
+
+    public long getBorrows() { return borrows; }
+
+    public long getValidationFailures() { return validationFailures; }
+
+    public long getTimeouts() { return timeouts; }
+
+    public long getLeaks() { return leaks; }
+
+    public long getTotalWaitMillis() { return totalWaitMillis; }
+
+    /**
+     * The share of borrows that were served by an already open connection.
+     * @return A value between 0 and 1.
+     */
+    public double getReuseRatio() {
+        return borrows == 0 ? 0 : 1.0 - (double) created / borrows;
+    }
+
+    @Override
+    public String toString() {
+        return "[active " + active + ", idle " + idle + ", max " + maxSize + ", waiting " + waiting
+                + ", created " + created + ", destroyed " + destroyed + ", borrows " + borrows
+                + ", validation failures " + validationFailures + ", timeouts " + timeouts
+                + ", leaks " + leaks + ", total wait " + totalWaitMillis + " ms]";
+    }
+}
@@ -4,16 +4,34 @@ import BE.Song;
 import DAL.Interfaces.ISongDAO;
 import DAL.Util.FileType;
 import DAL.Util.LocalFileHandler;
+import DAL.Util.LocalFileHandler.CopiedFiles;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SongDao_DB implements ISongDAO {
+    // SQL Server allows 2100 parameters per statement, and every song in a bulk insert uses 7.
+    private static final int INSERT_CHUNK_SIZE = 250;
+    // Only the columns a Song needs, in the order readSong reads them.
+    private static final String SONG_COLUMNS = "Id, Title, Artist, Genre, Duration, SongPath, CoverPath";
+    // A page list is never allocated larger than this up front, whatever limit the caller asks for.
+    private static final int MAX_PAGE_PRESIZE = 1000;
+
     private DatabaseConnector databaseConnector;
-    private static List<Song> everySong;
+    // Shared by every SongDao_DB, so PlayListDAO_DB gets the same Song objects as the library.
+    private static final SongIdentityMap identityMap = new SongIdentityMap();
 
     public SongDao_DB() {
         databaseConnector = new DatabaseConnector();
@@ -29,32 +47,146 @@ public class SongDao_DB implements ISongDAO {
 
         try(Connection connection = databaseConnector.getConnection();
             Statement statement = connection.createStatement()) {
-            String sql = "SELECT * FROM Songs;";
+            String sql = "SELECT " + SONG_COLUMNS + " FROM Songs;";
 
             ResultSet rs = statement.executeQuery(sql);
 
             // Loop through rows from database result set.
             while(rs.next()){
-                //map database row to object.
-                String title = rs.getString("Title").trim();
-                String artist = rs.getString("Artist").trim();
-                String genre = rs.getString("Genre").trim();
-                int time = rs.getInt("Duration");
-                String path = rs.getString("SongPath");
-                int id = rs.getInt("Id");
-                String coverPath = rs.getString("CoverPath");
-
-                Song song = new Song(title, artist, genre, time, path, id, coverPath);
-                allSongs.add(song);
+                allSongs.add(readSong(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
             throw new Exception("Failed to retrieve songs", e);
         }
-        everySong = allSongs;
         return allSongs;
     }
 
+    /**
+     * Returns all songs as a stream, which reads the songs from the database as it is consumed,
+     * instead of reading them all into a list first.
+     * The stream holds a database connection, so it must be closed, e.g. with try-with-resources.
+     * The streamed songs are not added to the identity map, so streaming the library doesn't keep every song in memory.
+     * @param fetchSize The number of rows to fetch from the database at a time.
+     * @return A stream of all songs, ordered by id.
+     * @throws Exception If it fails to start reading the songs.
+     */
+    @Override
+    public Stream<Song> streamSongs(int fetchSize) throws Exception {
+        String sql = "SELECT " + SONG_COLUMNS + " FROM Songs ORDER BY Id;";
+
+        Connection connection = null;
+        Statement statement = null;
+        ResultSet rs;
+
+        try {
+            connection = databaseConnector.getConnection();
+            statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            rs = statement.executeQuery(sql);
+        }
+        catch (SQLException e) {
+            closeQuietly(statement, connection);
+            e.printStackTrace();
+            throw new Exception("Failed to retrieve songs", e);
+        }
+
+        Spliterator<Song> songs = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Song> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(identityMap.mergeIfLoaded(readRow(rs)));
+                    return true;
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException("Failed to retrieve songs", e);
+                }
+            }
+        };
+
+        Statement openStatement = statement;
+        Connection openConnection = connection;
+        return StreamSupport.stream(songs, false).onClose(() -> closeQuietly(openStatement, openConnection));
+    }
+
+    /**
+     * Returns a page of songs, ordered by id.
+     * The page starts after a given id instead of at an offset, so the database can
+     * seek straight to it, and no songs are skipped or repeated if songs are created or deleted in between.
+     * @param afterId The id of the last song on the previous page, or 0 for the first page.
+     * @param limit The maximum number of songs on the page.
+     * @return The songs on the page. If it has fewer than limit songs, it is the last page.
+     * @throws Exception If it fails to retrieve the songs.
+     */
+    @Override
+    public List<Song> getSongsPage(int afterId, int limit) throws Exception {
+        String sql = "SELECT " + SONG_COLUMNS + " FROM Songs WHERE Id > ? ORDER BY Id " +
+                "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY;";
+
+        ArrayList<Song> page = new ArrayList<>(Math.max(0, Math.min(limit, MAX_PAGE_PRESIZE)));
+
+        try (Connection connection = databaseConnector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            // Bind parameters
+            statement.setInt(1, afterId);
+            statement.setInt(2, limit);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readSong(rs));
+                }
+            }
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to retrieve songs", e);
+        }
+        return page;
+    }
+
+    /**
+     * Maps the current row of a result set selecting SONG_COLUMNS to a song.
+     * @param rs The result set, positioned at the row to read.
+     * @return The one Song object for the id in the row.
+     * @throws SQLException If it fails to read the row.
+     */
+    private Song readSong(ResultSet rs) throws SQLException {
+        return identityMap.merge(readRow(rs));
+    }
+
+    /**
+     * Helper method to readSong, mapping the row to a new Song object without the identity map.
+     */
+    private static Song readRow(ResultSet rs) throws SQLException {
+        int id = rs.getInt(1);
+        String title = rs.getString(2).trim();
+        String artist = rs.getString(3).trim();
+        String genre = rs.getString(4).trim();
+        int time = rs.getInt(5);
+        String path = rs.getString(6);
+        String coverPath = rs.getString(7);
+
+        return new Song(title, artist, genre, time, path, id, coverPath);
+    }
+
+    private static void closeQuietly(Statement statement, Connection connection) {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Deletes a song from the database connection.
      * @param song The song to delete.
@@ -72,6 +204,8 @@ public class SongDao_DB implements ISongDAO {
             // Run the specified SQL Statement
             statement.executeUpdate();
 
+            identityMap.remove(song.getId());
+
             // Out commented because we ran into issues with the MediaPlayer class
             // not properly disposing of the songs.
             //LocalFileHandler.deleteLocalFile(song.getPath());
@@ -106,6 +240,10 @@ public class SongDao_DB implements ISongDAO {
 
             // Run the specified SQL statement
             statement.executeUpdate();
+
+            // A new Song object, with the cover as it is stored, replaces the one other threads may be reading.
+            identityMap.merge(new Song(song.getTitle(), song.getArtist(), song.getGenre(), song.getTime(),
+                    song.getPath(), song.getId(), coverPath));
         } catch (SQLException e) {
             e.printStackTrace();
             throw new Exception("Failed to edit the song", e);
@@ -113,19 +251,38 @@ public class SongDao_DB implements ISongDAO {
     }
 
     /**
-     * Returns a song from the database with given ID.
+     * Returns a song with given ID.
+     * Songs that have already been loaded are returned without a database round trip,
+     * otherwise the song is read from the database.
      * @param songId The ID of the song to return.
-     * @return A song object.
+     * @return A song object, or null if there is no song with given ID.
      * @throws Exception If it fails to retrieve a song with given ID.
      */
     @Override
     public Song getSongObjectFromId(int songId) throws Exception {
-        for (Song s:everySong) {
-            if (s.getId() == songId) {
-                return s;
+        Song song = identityMap.get(songId);
+        if (song != null) {
+            return song;
+        }
+
+        String sql = "SELECT " + SONG_COLUMNS + " FROM Songs WHERE Id = ?;";
+
+        try (Connection connection = databaseConnector.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            // Bind parameters
+            statement.setInt(1, songId);
+
+            ResultSet rs = statement.executeQuery();
+
+            if (rs.next()) {
+                song = readSong(rs);
             }
+            return song;
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to retrieve song", e);
         }
-        return null;
     }
 
     @Override
@@ -163,10 +320,193 @@ public class SongDao_DB implements ISongDAO {
 
             Song generatedSong = new Song(title, artist, genre, time,path, id, coverPath);
 
-            return generatedSong;
+            return identityMap.merge(generatedSong);
         } catch (SQLException e) {
             e.printStackTrace();
             throw new Exception("Failed to create song", e);
         }
     }
+
+    /**
+     * Creates several songs at once. The files are copied in parallel, and the songs are
+     * inserted a few hundred at a time in one transaction, so either all songs are created or none are.
+     * If the transaction fails, the files copied for it are deleted again.
+     * @param songs The songs to create.
+     * @param progress Receives the progress between 0 and 1, from a background thread while files are copied.
+     * @return The newly created songs, in the same order as given.
+     * @throws Exception If it fails to create the songs.
+     */
+    @Override
+    public List<Song> createSongs(Collection<Song> songs, DoubleConsumer progress) throws Exception {
+        List<Song> newSongs = new ArrayList<>(songs);
+        List<Song> createdSongs = new ArrayList<>(newSongs.size());
+
+        if (newSongs.isEmpty()) {
+            return createdSongs;
+        }
+
+        List<String> songPaths = new ArrayList<>();
+        List<String> coverPaths = new ArrayList<>();
+        for (Song song : newSongs) {
+            songPaths.add(song.getPath());
+            if (!song.getCoverPath().isEmpty()) {
+                coverPaths.add(song.getCoverPath());
+            }
+        }
+
+        // Every copied song file and every inserted song counts as one step.
+        int totalSteps = songPaths.size() + newSongs.size();
+        AtomicInteger stepsDone = new AtomicInteger();
+
+        CopiedFiles copiedSongs = LocalFileHandler.createLocalFiles(songPaths, FileType.SONG,
+                () -> progress.accept((double) stepsDone.incrementAndGet() / totalSteps));
+        CopiedFiles copiedCovers;
+        try {
+            copiedCovers = LocalFileHandler.createLocalFiles(coverPaths, FileType.IMAGE, null);
+        }
+        catch (Exception e) {
+            copiedSongs.deleteNewFiles();
+            throw e;
+        }
+        Map<String, Path> localSongPaths = copiedSongs.getLocalPaths();
+        Map<String, Path> localCoverPaths = copiedCovers.getLocalPaths();
+        // Copying the same file twice only counts once, so the insert steps start after the song files.
+        stepsDone.set(songPaths.size());
+
+        try (Connection connection = databaseConnector.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                for (int start = 0; start < newSongs.size(); start += INSERT_CHUNK_SIZE) {
+                    List<Song> chunk = newSongs.subList(start, Math.min(start + INSERT_CHUNK_SIZE, newSongs.size()));
+                    createdSongs.addAll(insertSongs(connection, chunk, localSongPaths, localCoverPaths));
+
+                    progress.accept((double) stepsDone.addAndGet(chunk.size()) / totalSteps);
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        catch (SQLException e) {
+            // The songs weren't stored, so the copies of their files would never be used.
+            copiedSongs.deleteNewFiles();
+            copiedCovers.deleteNewFiles();
+            e.printStackTrace();
+            throw new Exception("Failed to create songs", e);
+        }
+
+        for (int i = 0; i < createdSongs.size(); i++) {
+            createdSongs.set(i, identityMap.merge(createdSongs.get(i)));
+        }
+        return createdSongs;
+    }
+
+    /**
+     * Helper method to createSongs.
+     * Inserts songs with a single statement, and reads back the generated ids.
+     * A MERGE is used instead of an INSERT, because its OUTPUT can include the row number
+     * of the source row, which tells which generated id belongs to which song.
+     * @param connection The connection of the current transaction.
+     * @param songs The songs to insert.
+     * @param localSongPaths The copied song files, by their original path.
+     * @param localCoverPaths The copied cover images, by their original path.
+     * @return The inserted songs with their generated ids, in the same order as given.
+     * @throws SQLException If it fails to insert the songs.
+     */
+    private List<Song> insertSongs(Connection connection, List<Song> songs,
+                                   Map<String, Path> localSongPaths, Map<String, Path> localCoverPaths) throws SQLException {
+        if (!databaseConnector.getProfile().canInsertWithMergeOutput()) {
+            return batchInsertSongs(connection, songs, localSongPaths, localCoverPaths);
+        }
+
+        StringBuilder sql = new StringBuilder("MERGE INTO Songs USING (VALUES ");
+        for (int i = 0; i < songs.size(); i++) {
+            sql.append(i == 0 ? "(?,?,?,?,?,?,?)" : ",(?,?,?,?,?,?,?)");
+        }
+        sql.append(") AS Source (RowNumber, Title, Artist, Genre, Duration, SongPath, CoverPath) ON 1 = 0 ")
+                .append("WHEN NOT MATCHED THEN INSERT (Title, Artist, Genre, Duration, SongPath, CoverPath) ")
+                .append("VALUES (Source.Title, Source.Artist, Source.Genre, Source.Duration, Source.SongPath, Source.CoverPath) ")
+                .append("OUTPUT Source.RowNumber, INSERTED.Id;");
+
+        Song[] insertedSongs = new Song[songs.size()];
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                String path = String.valueOf(localSongPaths.get(song.getPath()));
+                Path localCoverPath = localCoverPaths.get(song.getCoverPath());
+                String coverPath = localCoverPath != null ? String.valueOf(localCoverPath) : "";
+
+                //Bind parameters
+                statement.setInt(parameter++, i);
+                statement.setString(parameter++, song.getTitle());
+                statement.setString(parameter++, song.getArtist());
+                statement.setString(parameter++, song.getGenre());
+                statement.setInt(parameter++, song.getTime());
+                statement.setString(parameter++, path);
+                statement.setString(parameter++, coverPath);
+
+                insertedSongs[i] = new Song(song.getTitle(), song.getArtist(), song.getGenre(), song.getTime(), path, 0, coverPath);
+            }
+
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    Song song = insertedSongs[rs.getInt(1)];
+                    insertedSongs[rs.getInt(1)] = new Song(song.getTitle(), song.getArtist(), song.getGenre(),
+                            song.getTime(), song.getPath(), rs.getInt(2), song.getCoverPath());
+                }
+            }
+        }
+        return List.of(insertedSongs);
+    }
+
+    /**
+     * Helper method to createSongs, for databases without MERGE ... OUTPUT.
+     * Inserts the songs as one JDBC batch, and reads back the generated ids in the order they were inserted.
+     * @param connection The connection of the current transaction.
+     * @param songs The songs to insert.
+     * @param localSongPaths The copied song files, by their original path.
+     * @param localCoverPaths The copied cover images, by their original path.
+     * @return The inserted songs with their generated ids, in the same order as given.
+     * @throws SQLException If it fails to insert the songs.
+     */
+    private List<Song> batchInsertSongs(Connection connection, List<Song> songs,
+                                        Map<String, Path> localSongPaths, Map<String, Path> localCoverPaths) throws SQLException {
+        String sql = "INSERT INTO Songs (Title, Artist, Genre, Duration, SongPath, CoverPath) VALUES (?,?,?,?,?,?);";
+
+        List<Song> insertedSongs = new ArrayList<>(songs.size());
+
+        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Song song : songs) {
+                Path localCoverPath = localCoverPaths.get(song.getCoverPath());
+
+                //Bind parameters
+                statement.setString(1, song.getTitle());
+                statement.setString(2, song.getArtist());
+                statement.setString(3, song.getGenre());
+                statement.setInt(4, song.getTime());
+                statement.setString(5, String.valueOf(localSongPaths.get(song.getPath())));
+                statement.setString(6, localCoverPath != null ? String.valueOf(localCoverPath) : "");
+                statement.addBatch();
+            }
+            statement.executeBatch();
+
+            try (ResultSet rs = statement.getGeneratedKeys()) {
+                for (Song song : songs) {
+                    if (!rs.next()) {
+                        throw new SQLException("The database did not return an id for every inserted song");
+                    }
+                    Path localCoverPath = localCoverPaths.get(song.getCoverPath());
+                    insertedSongs.add(new Song(song.getTitle(), song.getArtist(), song.getGenre(), song.getTime(),
+                            String.valueOf(localSongPaths.get(song.getPath())), rs.getInt(1),
+                            localCoverPath != null ? String.valueOf(localCoverPath) : ""));
+                }
+            }
+        }
+        return insertedSongs;
+    }
 }
@@ -0,0 +1,66 @@
+package DAL.DB;
+
+import BE.Song;
+import DAL.Util.IntHashMap;
+
+import java.util.Objects;
+
+/**
+ * Keeps exactly one Song object per song id, so the song library and the playlists
+ * share the same objects, and a song can be looked up by id without a database round trip.
+ * A Song object in the map is never changed, as the GUI and the search indexes read it from other threads
+ * without a lock. A song read with new values replaces it instead, and is passed on with the next library snapshot.
+ */
+public class SongIdentityMap {
+    private final IntHashMap<Song> songs = new IntHashMap<>();
+
+    /**
+     * Returns the song with the given id if it has been loaded.
+     * @param songId The id of the song.
+     * @return The song, or null if it isn't in the map.
+     */
+    public synchronized Song get(int songId) {
+        return songs.get(songId);
+    }
+
+    /**
+     * Registers a song read from the database. If a song with the same id and the same values is already
+     * in the map, that object is returned instead. If the values have changed, the given song replaces it.
+     * @param song The song read from the database.
+     * @return The one Song object for this id.
+     */
+    public synchronized Song merge(Song song) {
+        Song existing = songs.get(song.getId());
+
+        if (existing != null && hasSameValues(existing, song)) {
+            return existing;
+        }
+        songs.put(song.getId(), song);
+        return song;
+    }
+
+    private static boolean hasSameValues(Song existing, Song song) {
+        return Objects.equals(existing.getTitle(), song.getTitle())
+                && Objects.equals(existing.getArtist(), song.getArtist())
+                && Objects.equals(existing.getGenre(), song.getGenre())
+                && Objects.equals(existing.getCoverPath(), song.getCoverPath());
+    }
+
+    /**
+     * Like merge, but a song that isn't in the map yet is returned without being added,
+     * e.g. for songs streamed once, which would otherwise keep the whole library in the map.
+     * @param song The song read from the database.
+     * @return The Song object for this id if it was in the map, or the given song.
+     */
+    public synchronized Song mergeIfLoaded(Song song) {
+        return songs.get(song.getId()) != null ? merge(song) : song;
+    }
+
+    /**
+     * Removes a deleted song from the map.
+     * @param songId The id of the deleted song.
+     */
+    public synchronized void remove(int songId) {
+        songs.remove(songId);
+    }
+}
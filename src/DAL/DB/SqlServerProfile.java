@@ -0,0 +1,77 @@
+package DAL.DB;
+
+import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * The SQL Server used by the application.
+ */
+public class SqlServerProfile implements DataSourceProfile {
+    private final String serverName;
+    private final int portNumber;
+    private final String databaseName;
+    private final String user;
+    private final String password;
+
+    /**
+     * The school's SQL Server.
+     */
+    public SqlServerProfile() {
+        this("10.176.111.31", 1433, "MYTUNES_GRUPPE2", "CSe22A_18", "CSe22A_18");
+    }
+
+    public SqlServerProfile(String serverName, int portNumber, String databaseName, String user, String password) {
+        this.serverName = serverName;
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        this.user = user;
+        this.password = password;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+        SQLServerDataSource dataSource = new SQLServerDataSource();
+        dataSource.setServerName(serverName);
+        dataSource.setDatabaseName(databaseName);
+        dataSource.setUser(user);
+        dataSource.setPassword(password);
+        dataSource.setTrustServerCertificate(true);
+        dataSource.setPortNumber(portNumber);
+        return dataSource;
+    }
+
+    /**
+     * Deletes through a CTE that numbers the rows of the playlist.
+     */
+    @Override
+    public String deleteSongAtPositionSql() {
+        return "WITH Ordered AS (SELECT SongId, " +
+                "ROW_NUMBER() OVER (ORDER BY NumberInPlaylist, SongId) AS Position " +
+                "FROM SongsInPlaylists WHERE PlaylistId = ?) " +
+                "DELETE FROM Ordered WHERE Position = ? AND SongId = ?;";
+    }
+
+    /**
+     * Updates through a CTE that numbers the rows of the playlist.
+     */
+    @Override
+    public String rebalanceSql() {
+        return "WITH Ordered AS (SELECT NumberInPlaylist, " +
+                "ROW_NUMBER() OVER (ORDER BY NumberInPlaylist, SongId) * ? AS NewRank " +
+                "FROM SongsInPlaylists WHERE PlaylistId = ?) " +
+                "UPDATE Ordered SET NumberInPlaylist = NewRank WHERE NumberInPlaylist <> NewRank;";
+    }
+
+    @Override
+    public String createRulesTableSql() {
+        return "IF OBJECT_ID('SmartPlaylistRules', 'U') IS NULL CREATE TABLE SmartPlaylistRules " +
+                "(PlaylistId INT PRIMARY KEY REFERENCES Playlists (Id) ON DELETE CASCADE, " +
+                "SongQuery NVARCHAR(1000) NOT NULL);";
+    }
+
+    @Override
+    public boolean canInsertWithMergeOutput() {
+        return true;
+    }
+}
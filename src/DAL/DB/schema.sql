@@ -0,0 +1,32 @@
+-- The tables used by the DAOs, with the same columns as on the SQL Server.
+-- Used by InMemoryProfile to create the in-memory database (H2 in SQL Server mode).
+
+CREATE TABLE IF NOT EXISTS Songs (
+    Id INT IDENTITY(1,1) PRIMARY KEY,
+    Title NVARCHAR(255) NOT NULL,
+    Artist NVARCHAR(255) NOT NULL,
+    Genre NVARCHAR(255) NOT NULL,
+    Duration INT NOT NULL,
+    SongPath NVARCHAR(500) NOT NULL,
+    CoverPath NVARCHAR(500)
+);
+
+CREATE TABLE IF NOT EXISTS Playlists (
+    Id INT IDENTITY(1,1) PRIMARY KEY,
+    Title NVARCHAR(255) NOT NULL,
+    Creator NVARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS SongsInPlaylists (
+    SongId INT NOT NULL REFERENCES Songs (Id) ON DELETE CASCADE,
+    PlaylistId INT NOT NULL REFERENCES Playlists (Id) ON DELETE CASCADE,
+    NumberInPlaylist INT NOT NULL
+);
+
+-- The rules of the smart playlists, in the search language. Their songs are not stored, but found by the rule.
+CREATE TABLE IF NOT EXISTS SmartPlaylistRules (
+    PlaylistId INT PRIMARY KEY REFERENCES Playlists (Id) ON DELETE CASCADE,
+    SongQuery NVARCHAR(1000) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS IX_SongsInPlaylists_Order ON SongsInPlaylists (PlaylistId, NumberInPlaylist);
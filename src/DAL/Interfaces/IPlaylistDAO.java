@@ -1,6 +1,7 @@
 package DAL.Interfaces;
 
 import BE.PlayList;
+import BE.PlayQueue;
 import BE.Song;
 import java.util.List;
 
@@ -14,6 +15,14 @@ public interface IPlaylistDAO {
      */
     List<PlayList> getAllPlayLists() throws Exception;
 
+    /**
+     * Reads the songs of a playlist again, e.g. after a change failed because the playlist had changed.
+     * @param playList The playlist.
+     * @return The songs of the playlist in order.
+     * @throws Exception If it fails to read the songs.
+     */
+    List<Song> getSongsInPlayList(PlayList playList) throws Exception;
+
     /**
      * Adds a song to a playlist.
      * @param playList The playlist to add a song to.
@@ -23,12 +32,13 @@ public interface IPlaylistDAO {
     void addSongToPlayList(PlayList playList, Song song) throws Exception;
 
     /**
-     * removes a songs from a playlist.
+     * removes a songs from a playlist. The PlayList object isn't changed, the caller removes the song from it.
      * @param playList last selected playlist
      * @param song last selected song
+     * @param songIndex the position of the song in the playlist, which tells copies of the same song apart.
      * @throws Exception throws exception if it fails to remove song
      */
-    void removeSOP(PlayList playList, Song song) throws Exception;
+    void removeSOP(PlayList playList, Song song, int songIndex) throws Exception;
 
     /**
      * updates a playlist title.
@@ -53,10 +63,21 @@ public interface IPlaylistDAO {
 
     /**
      * Moves the songsPlacement in a playlist in the database.
+     * The PlayList object isn't changed, the caller moves the song in it.
      * @param playList the playlist the song is moved in.
-     * @param song the song that is moved.
+     * @param entry the place of the song that is moved.
      * @param moveUp the direction the song should be moved.
      * @throws Exception if it fails to move the song.
      */
-    void moveSOP(PlayList playList, Song song, Boolean moveUp) throws Exception;
+    void moveSOP(PlayList playList, PlayQueue.Entry<Song> entry, Boolean moveUp) throws Exception;
+
+    /**
+     * Moves a song in a playlist from one position to another.
+     * The PlayList object isn't changed, the caller moves the song in it.
+     * @param playList the playlist the song is moved in.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @throws Exception if it fails to move the song.
+     */
+    void moveTo(PlayList playList, int fromIndex, int toIndex) throws Exception;
 }
@@ -1,7 +1,10 @@
 package DAL.Interfaces;
 
 import BE.Song;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
 
 public interface ISongDAO {
     /**
@@ -18,6 +21,24 @@ public interface ISongDAO {
      */
     List<Song> getAllSongs() throws Exception;
 
+    /**
+     * Returns all songs as a stream, which reads the songs as it is consumed.
+     * The stream must be closed after use.
+     * @param fetchSize The number of songs to read at a time.
+     * @return A stream of all songs, ordered by id.
+     * @throws Exception If it fails to start reading the songs.
+     */
+    Stream<Song> streamSongs(int fetchSize) throws Exception;
+
+    /**
+     * Returns a page of songs, ordered by id.
+     * @param afterId The id of the last song on the previous page, or 0 for the first page.
+     * @param limit The maximum number of songs on the page.
+     * @return The songs on the page. If it has fewer than limit songs, it is the last page.
+     * @throws Exception If it fails to retrieve the songs.
+     */
+    List<Song> getSongsPage(int afterId, int limit) throws Exception;
+
     /**
      * Deletes a song.
      * @param song The song to delete.
@@ -40,4 +61,13 @@ public interface ISongDAO {
      * @throws Exception If it fails to create the song.
      */
     Song createSong(Song song) throws Exception;
+
+    /**
+     * Creates several songs at once.
+     * @param songs The songs to create.
+     * @param progress Receives the progress between 0 and 1, possibly from a background thread.
+     * @return The newly created songs, in the same order as given.
+     * @throws Exception If it fails to create the songs.
+     */
+    List<Song> createSongs(Collection<Song> songs, DoubleConsumer progress) throws Exception;
 }
@@ -0,0 +1,693 @@
+package DAL.Local;
+
+import BE.Song;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded, file based store for songs and playlists, used instead of the database.
+ * Everything is kept in memory. Every change is appended to a log file before it is applied,
+ * and once the log grows long, the whole state is written to a snapshot file and the log starts over.
+ * On startup the snapshot is read and the log is replayed on top of it.
+ * <p>
+ * Every snapshot has a generation, and the log starts with the generation of the snapshot it continues.
+ * A log left over from before the latest snapshot, e.g. when the program stopped between writing the snapshot
+ * and starting the new log, has an older generation and is not replayed, as its changes are in the snapshot already.
+ */
+public class LocalStore {
+    // Version 2 added the rules of smart playlists, and version 3 the generation. Older snapshots can still be read.
+    private static final int SNAPSHOT_VERSION = 3;
+    // The log starts with this marker and the generation. Logs written before generations have no header.
+    private static final int LOG_MARKER = 0x4D544C47;
+    private static final int LOG_HEADER_LENGTH = 12;
+    // The log is compacted into a new snapshot after this many changes.
+    private static final int COMPACT_AFTER = 10_000;
+
+    private static final byte SONG_PUT = 1;
+    private static final byte SONG_DELETE = 2;
+    private static final byte PLAYLIST_PUT = 3;
+    private static final byte PLAYLIST_DELETE = 4;
+    private static final byte SOP_ADD = 5;
+    private static final byte SOP_REMOVE = 6;
+    private static final byte SOP_MOVE = 7;
+
+    private static final Map<Path, LocalStore> openStores = new HashMap<>();
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private FileChannel logChannel;
+    // Null after the log couldn't be repaired, which stops any further writes.
+    private DataOutputStream log;
+    // The length of the log up to the end of the last record that was completely written.
+    private long logLength;
+    private int loggedChanges;
+    // The generation of the snapshot the log continues from.
+    private long generation;
+
+    // Ordered by id, so songs are listed and paged in the same order as from the database.
+    private final TreeMap<Integer, Song> songs = new TreeMap<>();
+    private final LinkedHashMap<Integer, StoredPlaylist> playlists = new LinkedHashMap<>();
+    private int lastSongId;
+    private int lastPlaylistId;
+
+    /**
+     * Returns the store kept in the given directory, opening it the first time.
+     * Every DAO using the same directory shares one store.
+     * @param directory The directory with the snapshot and log files.
+     * @return The store.
+     * @throws Exception If it fails to read the store.
+     */
+    public static LocalStore open(Path directory) throws Exception {
+        synchronized (openStores) {
+            Path key = directory.toAbsolutePath().normalize();
+            LocalStore store = openStores.get(key);
+            if (store == null) {
+                store = new LocalStore(key);
+                openStores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    private LocalStore(Path directory) throws Exception {
+        snapshotFile = directory.resolve("mytunes.snapshot");
+        logFile = directory.resolve("mytunes.log");
+
+        try {
+            Files.createDirectories(directory);
+            readSnapshot();
+            replayLog();
+            if (log == null) {
+                openLog();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to open the local storage in " + directory, e);
+        }
+    }
+
+    /**
+     * A playlist as it is stored, with the ids of its songs in order.
+     * A smart playlist has a rule instead of songs.
+     */
+    public static class StoredPlaylist {
+        private final int id;
+        private String title;
+        private String creator;
+        private String smartRule;
+        private int[] songIds = new int[8];
+        private int songAmount;
+
+        private StoredPlaylist(int id, String title, String creator) {
+            this.id = id;
+            this.title = title;
+            this.creator = creator;
+        }
+
+        public int getId() { return id; }
+
+        public String getTitle() { return title; }
+
+        public String getCreator() { return creator; }
+
+        public String getSmartRule() { return smartRule; }
+
+        public int getSongAmount() { return songAmount; }
+
+        public int getSongId(int index) { return songIds[index]; }
+
+        private void add(int songId) {
+            if (songAmount == songIds.length) {
+                songIds = Arrays.copyOf(songIds, songAmount * 2);
+            }
+            songIds[songAmount++] = songId;
+        }
+
+        private void remove(int index) {
+            System.arraycopy(songIds, index + 1, songIds, index, songAmount - index - 1);
+            songAmount--;
+        }
+
+        private void move(int fromIndex, int toIndex) {
+            int songId = songIds[fromIndex];
+            if (fromIndex < toIndex) {
+                System.arraycopy(songIds, fromIndex + 1, songIds, fromIndex, toIndex - fromIndex);
+            }
+            else {
+                System.arraycopy(songIds, toIndex, songIds, toIndex + 1, fromIndex - toIndex);
+            }
+            songIds[toIndex] = songId;
+        }
+
+        private void removeSong(int songId) {
+            int kept = 0;
+            for (int i = 0; i < songAmount; i++) {
+                if (songIds[i] != songId) {
+                    songIds[kept++] = songIds[i];
+                }
+            }
+            songAmount = kept;
+        }
+    }
+
+    public synchronized List<Song> getAllSongs() {
+        return new ArrayList<>(songs.values());
+    }
+
+    public synchronized Song getSong(int songId) {
+        return songs.get(songId);
+    }
+
+    /**
+     * Returns up to limit songs with an id higher than afterId, ordered by id.
+     */
+    public synchronized List<Song> getSongsAfter(int afterId, int limit) {
+        List<Song> page = new ArrayList<>(Math.min(limit, songs.size()));
+        for (Song song : songs.tailMap(afterId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(song);
+        }
+        return page;
+    }
+
+    /**
+     * Stores a new song, giving it the next free id.
+     * @return The stored song with its id.
+     */
+    public synchronized Song createSong(String title, String artist, String genre, int duration, String path, String coverPath) throws Exception {
+        int id = lastSongId + 1;
+        write(songRecord(id, title, artist, genre, duration, path, coverPath));
+        return songs.get(id);
+    }
+
+    /**
+     * Stores several new songs, giving them the next free ids.
+     * The log is only flushed once, after the last song, and the songs are only stored if all of them were written.
+     * @return The stored songs with their ids, in the same order as given.
+     */
+    public synchronized List<Song> createSongs(List<Song> newSongs) throws Exception {
+        int firstId = lastSongId + 1;
+        List<byte[]> records = new ArrayList<>(newSongs.size());
+        for (Song song : newSongs) {
+            records.add(songRecord(firstId + records.size(), song.getTitle(), song.getArtist(), song.getGenre(),
+                    song.getTime(), song.getPath(), song.getCoverPath()));
+        }
+        writeToLog(records);
+
+        List<Song> createdSongs = new ArrayList<>(newSongs.size());
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                apply(records.get(i));
+                createdSongs.add(songs.get(firstId + i));
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to write to the local storage", e);
+        }
+        compactIfNeeded();
+        return createdSongs;
+    }
+
+    /**
+     * Stores the new title, artist, genre and cover of an existing song.
+     */
+    public synchronized void updateSong(int id, String title, String artist, String genre, String coverPath) throws Exception {
+        Song song = songs.get(id);
+        if (song == null) {
+            throw new Exception("The song no longer exists");
+        }
+        write(songRecord(id, title, artist, genre, song.getTime(), song.getPath(), coverPath));
+    }
+
+    /**
+     * Deletes a song, and removes it from every playlist.
+     */
+    public synchronized void deleteSong(int id) throws Exception {
+        write(record(SONG_DELETE, id));
+    }
+
+    public synchronized List<StoredPlaylist> getAllPlaylists() {
+        return new ArrayList<>(playlists.values());
+    }
+
+    /**
+     * Stores a new playlist, giving it the next free id.
+     * @return The id of the new playlist.
+     */
+    public synchronized int createPlaylist(String title, String creator, String smartRule) throws Exception {
+        int id = lastPlaylistId + 1;
+        write(playlistRecord(id, title, creator, smartRule));
+        return id;
+    }
+
+    public synchronized void updatePlaylist(int id, String title, String smartRule) throws Exception {
+        write(playlistRecord(id, title, getPlaylist(id).creator, smartRule));
+    }
+
+    public synchronized void deletePlaylist(int id) throws Exception {
+        write(record(PLAYLIST_DELETE, id));
+    }
+
+    /**
+     * Adds a song to the end of a playlist.
+     */
+    public synchronized void addSongToPlaylist(int playlistId, int songId) throws Exception {
+        getPlaylist(playlistId);
+        if (!songs.containsKey(songId)) {
+            throw new Exception("The song no longer exists");
+        }
+        write(record(SOP_ADD, playlistId, songId));
+    }
+
+    /**
+     * Removes the song at an index of a playlist.
+     * @param songId The id of the song expected at the index, to catch changes made in between.
+     */
+    public synchronized void removeSongFromPlaylist(int playlistId, int index, int songId) throws Exception {
+        StoredPlaylist playlist = getPlaylist(playlistId);
+        if (index < 0 || index >= playlist.songAmount || playlist.songIds[index] != songId) {
+            throw new Exception("The song is no longer at position " + (index + 1) + " in the playlist");
+        }
+        write(record(SOP_REMOVE, playlistId, index));
+    }
+
+    /**
+     * Moves the song at one index of a playlist to another index.
+     */
+    public synchronized void moveSongInPlaylist(int playlistId, int fromIndex, int toIndex) throws Exception {
+        StoredPlaylist playlist = getPlaylist(playlistId);
+        if (fromIndex < 0 || fromIndex >= playlist.songAmount || toIndex < 0 || toIndex >= playlist.songAmount) {
+            throw new Exception("Can't move song from position " + (fromIndex + 1) + " to " + (toIndex + 1));
+        }
+        write(record(SOP_MOVE, playlistId, fromIndex, toIndex));
+    }
+
+    private StoredPlaylist getPlaylist(int playlistId) throws Exception {
+        StoredPlaylist playlist = playlists.get(playlistId);
+        if (playlist == null) {
+            throw new Exception("The playlist no longer exists");
+        }
+        return playlist;
+    }
+
+    /**
+     * Appends a change to the log, and applies it once it has been written.
+     */
+    private void write(byte[] record) throws Exception {
+        writeToLog(List.of(record));
+        try {
+            apply(record);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to write to the local storage", e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Appends records to the log and flushes it, so they are saved once this returns.
+     * If that fails, e.g. because the disk is full, the log is cut back to the last complete record,
+     * so a partly written record never ends up in front of the records written after it.
+     * If the log can't be cut back, the store refuses any further changes.
+     */
+    private void writeToLog(List<byte[]> records) throws Exception {
+        if (log == null) {
+            throw new Exception("The local storage can't be written to after an earlier error, restart the program");
+        }
+
+        long length = logLength;
+        try {
+            for (byte[] record : records) {
+                length += append(record);
+            }
+            log.flush();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            discardUnsavedRecords();
+            throw new Exception("Failed to write to the local storage", e);
+        }
+        logLength = length;
+        loggedChanges += records.size();
+    }
+
+    /**
+     * Writes a record to the log as its length, a checksum and the record itself,
+     * so a record that was only partly written when the program stopped can be detected.
+     * @return The number of bytes written.
+     */
+    private int append(byte[] record) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(record);
+
+        log.writeInt(record.length);
+        log.writeInt((int) checksum.getValue());
+        log.write(record);
+        return 8 + record.length;
+    }
+
+    /**
+     * Drops what is left of a failed write in the buffer, and cuts the log back to the last complete record.
+     * The buffer is left behind instead of closed, as closing it would write the rest of the failed record.
+     */
+    private void discardUnsavedRecords() {
+        try {
+            logChannel.truncate(logLength);
+            logChannel.position(logLength);
+            log = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel)));
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            log = null;
+            try {
+                logChannel.close();
+            }
+            catch (IOException closeError) {
+                closeError.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Applies a change to the in-memory state. Used both for new changes and when replaying the log.
+     */
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        switch (in.readByte()) {
+            case SONG_PUT -> {
+                Song song = readSong(in);
+                // A changed song is a new Song object, as the old one may be read by other threads without the lock.
+                songs.put(song.getId(), song);
+                lastSongId = Math.max(lastSongId, song.getId());
+            }
+            case SONG_DELETE -> {
+                int songId = in.readInt();
+                songs.remove(songId);
+                for (StoredPlaylist playlist : playlists.values()) {
+                    playlist.removeSong(songId);
+                }
+            }
+            case PLAYLIST_PUT -> {
+                int id = in.readInt();
+                String title = in.readUTF();
+                String creator = in.readUTF();
+                // Records written before smart playlists existed end after the creator.
+                String smartRule = in.available() > 0 ? in.readUTF() : "";
+                StoredPlaylist playlist = playlists.get(id);
+                if (playlist == null) {
+                    playlist = new StoredPlaylist(id, title, creator);
+                    playlists.put(id, playlist);
+                }
+                else {
+                    playlist.title = title;
+                    playlist.creator = creator;
+                }
+                playlist.smartRule = smartRule.isEmpty() ? null : smartRule;
+                lastPlaylistId = Math.max(lastPlaylistId, id);
+            }
+            case PLAYLIST_DELETE -> playlists.remove(in.readInt());
+            case SOP_ADD -> playlists.get(in.readInt()).add(in.readInt());
+            case SOP_REMOVE -> playlists.get(in.readInt()).remove(in.readInt());
+            case SOP_MOVE -> playlists.get(in.readInt()).move(in.readInt(), in.readInt());
+            default -> throw new IOException("Unknown record in the local storage log");
+        }
+    }
+
+    private void compactIfNeeded() throws Exception {
+        if (loggedChanges >= COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes the whole state to a new snapshot and empties the log.
+     * The snapshot is written to a temporary file first and then moved into place,
+     * so there is always a complete snapshot on disk. The snapshot gets the next generation,
+     * so if the program stops before the log is emptied, the old log is skipped on the next start.
+     */
+    public synchronized void compact() throws Exception {
+        Path temporaryFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        long nextGeneration = generation + 1;
+
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(nextGeneration);
+                out.writeInt(lastSongId);
+                out.writeInt(lastPlaylistId);
+
+                out.writeInt(songs.size());
+                for (Song song : songs.values()) {
+                    writeSong(out, song.getId(), song.getTitle(), song.getArtist(), song.getGenre(),
+                            song.getTime(), song.getPath(), song.getCoverPath());
+                }
+
+                out.writeInt(playlists.size());
+                for (StoredPlaylist playlist : playlists.values()) {
+                    out.writeInt(playlist.id);
+                    out.writeUTF(playlist.title);
+                    out.writeUTF(playlist.creator);
+                    out.writeUTF(playlist.smartRule != null ? playlist.smartRule : "");
+                    out.writeInt(playlist.songAmount);
+                    for (int i = 0; i < playlist.songAmount; i++) {
+                        out.writeInt(playlist.songIds[i]);
+                    }
+                }
+                out.flush();
+                // Makes sure the snapshot is on disk before the log is emptied.
+                channel.force(true);
+            }
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            generation = nextGeneration;
+            if (log != null) {
+                log.close();
+            }
+            startLog();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            throw new Exception("Failed to compact the local storage", e);
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            int version = in.readInt();
+            if (version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported local storage snapshot version");
+            }
+            generation = version >= 3 ? in.readLong() : 0;
+            lastSongId = in.readInt();
+            lastPlaylistId = in.readInt();
+
+            int songAmount = in.readInt();
+            for (int i = 0; i < songAmount; i++) {
+                Song song = readSong(in);
+                songs.put(song.getId(), song);
+            }
+
+            int playlistAmount = in.readInt();
+            for (int i = 0; i < playlistAmount; i++) {
+                StoredPlaylist playlist = new StoredPlaylist(in.readInt(), in.readUTF(), in.readUTF());
+                if (version >= 2) {
+                    String smartRule = in.readUTF();
+                    playlist.smartRule = smartRule.isEmpty() ? null : smartRule;
+                }
+                int songsInPlaylist = in.readInt();
+                for (int j = 0; j < songsInPlaylist; j++) {
+                    playlist.add(in.readInt());
+                }
+                playlists.put(playlist.id, playlist);
+            }
+        }
+    }
+
+    /**
+     * Replays the log on top of the snapshot. A record at the end that was only partly
+     * written is cut off, so new records are appended after the last complete one.
+     * A log from an older generation than the snapshot is already part of it, so it is emptied instead.
+     */
+    private void replayLog() throws IOException {
+        if (!Files.exists(logFile) || Files.size(logFile) == 0) {
+            startLog();
+            return;
+        }
+
+        long fileSize = Files.size(logFile);
+        long validLength = 0;
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(logFile));
+             DataInputStream in = new DataInputStream(file)) {
+            file.mark(LOG_HEADER_LENGTH);
+            if (fileSize >= LOG_HEADER_LENGTH && in.readInt() == LOG_MARKER) {
+                if (in.readLong() != generation) {
+                    validLength = -1;
+                }
+                else {
+                    validLength = LOG_HEADER_LENGTH;
+                }
+            }
+            else {
+                // A log without a header was written before generations, on top of a snapshot without one.
+                file.reset();
+                if (generation != 0) {
+                    validLength = -1;
+                }
+            }
+
+            while (validLength >= 0 && validLength + 8 <= fileSize) {
+                int length = in.readInt();
+                int expectedChecksum = in.readInt();
+                // A record running past the end of the file was only partly written.
+                if (length < 0 || length > fileSize - validLength - 8) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+
+                CRC32 checksum = new CRC32();
+                checksum.update(record);
+                if ((int) checksum.getValue() != expectedChecksum) {
+                    break;
+                }
+
+                apply(record);
+                loggedChanges++;
+                validLength += 8 + record.length;
+            }
+        }
+
+        // An old log, or one without a single complete record, starts over with a header.
+        if (validLength <= LOG_HEADER_LENGTH && loggedChanges == 0) {
+            startLog();
+        }
+        else {
+            logLength = validLength;
+            openLog();
+            // Cuts off a record that was only partly written, so new records follow the last complete one.
+            logChannel.truncate(validLength);
+        }
+    }
+
+    /**
+     * Empties the log and writes its header with the current generation.
+     */
+    private void startLog() throws IOException {
+        logLength = 0;
+        openLog();
+        logChannel.truncate(0);
+        log.writeInt(LOG_MARKER);
+        log.writeLong(generation);
+        log.flush();
+        logLength = LOG_HEADER_LENGTH;
+        loggedChanges = 0;
+    }
+
+    /**
+     * Opens the log for appending after its last complete record, at logLength.
+     */
+    private void openLog() throws IOException {
+        logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        logChannel.position(logLength);
+        log = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel)));
+    }
+
+    private static byte[] songRecord(int id, String title, String artist, String genre, int duration, String path, String coverPath) throws Exception {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(SONG_PUT);
+            writeSong(out, id, title, artist, genre, duration, path, coverPath);
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new Exception("Failed to store the song", e);
+        }
+    }
+
+    private static byte[] playlistRecord(int id, String title, String creator, String smartRule) throws Exception {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PLAYLIST_PUT);
+            out.writeInt(id);
+            out.writeUTF(title);
+            out.writeUTF(creator != null ? creator : "");
+            out.writeUTF(smartRule != null ? smartRule : "");
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new Exception("Failed to store the playlist", e);
+        }
+    }
+
+    private static byte[] record(byte type, int... values) {
+        byte[] record = new byte[1 + values.length * 4];
+        record[0] = type;
+        for (int i = 0; i < values.length; i++) {
+            int value = values[i];
+            int offset = 1 + i * 4;
+            record[offset] = (byte) (value >>> 24);
+            record[offset + 1] = (byte) (value >>> 16);
+            record[offset + 2] = (byte) (value >>> 8);
+            record[offset + 3] = (byte) value;
+        }
+        return record;
+    }
+
+    private static void writeSong(DataOutputStream out, int id, String title, String artist, String genre,
+                                  int duration, String path, String coverPath) throws IOException {
+        out.writeInt(id);
+        out.writeUTF(title);
+        out.writeUTF(artist);
+        out.writeUTF(genre);
+        out.writeInt(duration);
+        out.writeUTF(path);
+        out.writeUTF(coverPath != null ? coverPath : "");
+    }
+
+    private static Song readSong(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String title = in.readUTF();
+        String artist = in.readUTF();
+        String genre = in.readUTF();
+        int duration = in.readInt();
+        String path = in.readUTF();
+        String coverPath = in.readUTF();
+        return new Song(title, artist, genre, duration, path, id, coverPath);
+    }
+}
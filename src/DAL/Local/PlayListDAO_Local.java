@@ -0,0 +1,163 @@
+package DAL.Local;
+
+import BE.PlayList;
+import BE.PlayQueue;
+import BE.Song;
+import DAL.Interfaces.IPlaylistDAO;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores playlists in a LocalStore instead of the database.
+ */
+public class PlayListDAO_Local implements IPlaylistDAO {
+    private final Path directory;
+
+    /**
+     * @param directory The directory the local storage is kept in.
+     */
+    public PlayListDAO_Local(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns all playlists with their songs in order.
+     * The songs are the same Song objects as in the song library.
+     * @return A list of all playlists.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public List<PlayList> getAllPlayLists() throws Exception {
+        LocalStore store = LocalStore.open(directory);
+        List<PlayList> allPlayLists = new ArrayList<>();
+
+        synchronized (store) {
+            for (LocalStore.StoredPlaylist storedPlaylist : store.getAllPlaylists()) {
+                PlayList playList = new PlayList(storedPlaylist.getId(), storedPlaylist.getTitle(), storedPlaylist.getCreator());
+                playList.setSmartRule(storedPlaylist.getSmartRule());
+
+                for (int i = 0; i < storedPlaylist.getSongAmount(); i++) {
+                    playList.addSongToPlaylist(store.getSong(storedPlaylist.getSongId(i)));
+                }
+                allPlayLists.add(playList);
+            }
+        }
+        return allPlayLists;
+    }
+
+    /**
+     * Reads the songs of a playlist in order.
+     * @param playList The playlist.
+     * @return The songs of the playlist, or none if it no longer exists.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public List<Song> getSongsInPlayList(PlayList playList) throws Exception {
+        LocalStore store = LocalStore.open(directory);
+        List<Song> songs = new ArrayList<>();
+
+        synchronized (store) {
+            for (LocalStore.StoredPlaylist storedPlaylist : store.getAllPlaylists()) {
+                if (storedPlaylist.getId() == playList.getPlayListId()) {
+                    for (int i = 0; i < storedPlaylist.getSongAmount(); i++) {
+                        songs.add(store.getSong(storedPlaylist.getSongId(i)));
+                    }
+                }
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * Adds a song to the end of a playlist.
+     * @param playList The playlist to add a song to.
+     * @param song The song to add to the playlist.
+     * @throws Exception If it fails to add the song to the playlist.
+     */
+    @Override
+    public void addSongToPlayList(PlayList playList, Song song) throws Exception {
+        LocalStore.open(directory).addSongToPlaylist(playList.getPlayListId(), song.getId());
+    }
+
+    /**
+     * Removes the song at a position from the playlist.
+     * @param playList last selected playlist
+     * @param song last selected song
+     * @param songIndex the position of the song in the playlist.
+     * @throws Exception if it fails to remove song from playlist.
+     */
+    @Override
+    public void removeSOP(PlayList playList, Song song, int songIndex) throws Exception {
+        LocalStore.open(directory).removeSongFromPlaylist(playList.getPlayListId(), songIndex, song.getId());
+    }
+
+    /**
+     * Updates the title and the smart playlist rule of a playlist.
+     * @param playList last selected playlist.
+     * @throws Exception if it fails to update the playlist.
+     */
+    @Override
+    public void updatePlayList(PlayList playList) throws Exception {
+        LocalStore.open(directory).updatePlaylist(playList.getPlayListId(), playList.getTitle(), playList.getSmartRule());
+    }
+
+    /**
+     * Creates a new playlist.
+     * @param playList the new playlist.
+     * @return The new playlist with its id.
+     * @throws Exception if it fails to create the playlist.
+     */
+    @Override
+    public PlayList createPlayList(PlayList playList) throws Exception {
+        int id = LocalStore.open(directory).createPlaylist(playList.getTitle(), playList.getCreatorName(), playList.getSmartRule());
+        PlayList newPlayList = new PlayList(id, playList.getTitle(), playList.getCreatorName());
+        newPlayList.setSmartRule(playList.getSmartRule());
+        return newPlayList;
+    }
+
+    /**
+     * Deletes a playlist.
+     * @param playList selected playlist.
+     * @throws Exception if it fails to delete the playlist.
+     */
+    @Override
+    public void deletePlayList(PlayList playList) throws Exception {
+        LocalStore.open(directory).deletePlaylist(playList.getPlayListId());
+    }
+
+    /**
+     * Moves a song one step up or down in a playlist.
+     * @param playList the playlist the song is moved in.
+     * @param entry the place of the song that is moved.
+     * @param moveUp the direction the song should be moved.
+     * @throws Exception if it fails to move the song.
+     */
+    @Override
+    public void moveSOP(PlayList playList, PlayQueue.Entry<Song> entry, Boolean moveUp) throws Exception {
+        int songIndex = playList.indexOf(entry);
+
+        if (moveUp && songIndex > 0) {
+            moveTo(playList, songIndex, songIndex - 1);
+        }
+        if (!moveUp && songIndex != -1 && songIndex + 1 < playList.getSongAmount()) {
+            moveTo(playList, songIndex, songIndex + 1);
+        }
+    }
+
+    /**
+     * Moves the song at one position in the playlist to another position.
+     * @param playList the playlist the song is moved in.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @throws Exception if it fails to move the song.
+     */
+    @Override
+    public void moveTo(PlayList playList, int fromIndex, int toIndex) throws Exception {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        LocalStore.open(directory).moveSongInPlaylist(playList.getPlayListId(), fromIndex, toIndex);
+    }
+}
@@ -0,0 +1,170 @@
+package DAL.Local;
+
+import BE.Song;
+import DAL.Interfaces.ISongDAO;
+import DAL.Util.FileType;
+import DAL.Util.LocalFileHandler;
+import DAL.Util.LocalFileHandler.CopiedFiles;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Stores songs in a LocalStore instead of the database.
+ */
+public class SongDao_Local implements ISongDAO {
+    private final Path directory;
+
+    /**
+     * @param directory The directory the local storage is kept in.
+     */
+    public SongDao_Local(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns all songs, ordered by id.
+     * @return A list of all songs.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public List<Song> getAllSongs() throws Exception {
+        return LocalStore.open(directory).getAllSongs();
+    }
+
+    /**
+     * Returns all songs as a stream. The songs are already in memory,
+     * so the stream is over a copy of the song list and the fetch size is not used.
+     * @param fetchSize Not used.
+     * @return A stream of all songs, ordered by id.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public Stream<Song> streamSongs(int fetchSize) throws Exception {
+        return getAllSongs().stream();
+    }
+
+    /**
+     * Returns a page of songs, ordered by id.
+     * @param afterId The id of the last song on the previous page, or 0 for the first page.
+     * @param limit The maximum number of songs on the page.
+     * @return The songs on the page. If it has fewer than limit songs, it is the last page.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public List<Song> getSongsPage(int afterId, int limit) throws Exception {
+        return LocalStore.open(directory).getSongsAfter(afterId, limit);
+    }
+
+    /**
+     * Deletes a song, and removes it from every playlist.
+     * @param song The song to delete.
+     * @throws Exception If it fails to delete the song.
+     */
+    @Override
+    public void deleteSong(Song song) throws Exception {
+        LocalStore.open(directory).deleteSong(song.getId());
+    }
+
+    /**
+     * Updates a song with a new one.
+     * @param song The new song.
+     * @throws Exception If it fails to update the song.
+     */
+    @Override
+    public void updateSong(Song song) throws Exception {
+        Path relativeCoverPath = !song.getCoverPath().isEmpty() ? LocalFileHandler.createLocalFile(song.getCoverPath(), FileType.IMAGE) : null;
+        String coverPath = relativeCoverPath != null ? String.valueOf(relativeCoverPath) : "";
+
+        LocalStore.open(directory).updateSong(song.getId(), song.getTitle(), song.getArtist(), song.getGenre(), coverPath);
+    }
+
+    /**
+     * Returns a song with given ID.
+     * @param songId The ID of the song to return.
+     * @return A song object, or null if there is no song with given ID.
+     * @throws Exception If it fails to open the local storage.
+     */
+    @Override
+    public Song getSongObjectFromId(int songId) throws Exception {
+        return LocalStore.open(directory).getSong(songId);
+    }
+
+    /**
+     * Copies the song file and cover into the data folder, and stores the song.
+     * @param song The song to create.
+     * @return The newly created song.
+     * @throws Exception If it fails to create the song.
+     */
+    @Override
+    public Song createSong(Song song) throws Exception {
+        Path relativePath = LocalFileHandler.createLocalFile(song.getPath(), FileType.SONG);
+        Path relativeCoverPath = !song.getCoverPath().isEmpty() ? LocalFileHandler.createLocalFile(song.getCoverPath(), FileType.IMAGE) : null;
+
+        String path = String.valueOf(relativePath);
+        String coverPath = relativeCoverPath != null ? String.valueOf(relativeCoverPath) : "";
+
+        return LocalStore.open(directory).createSong(song.getTitle(), song.getArtist(), song.getGenre(), song.getTime(), path, coverPath);
+    }
+
+    /**
+     * Creates several songs at once. The files are copied in parallel,
+     * and all songs are written to the log before it is flushed. If the songs can't be stored, the copies are deleted again.
+     * @param songs The songs to create.
+     * @param progress Receives the progress between 0 and 1, from a background thread while files are copied.
+     * @return The newly created songs, in the same order as given.
+     * @throws Exception If it fails to create the songs.
+     */
+    @Override
+    public List<Song> createSongs(Collection<Song> songs, DoubleConsumer progress) throws Exception {
+        List<Song> newSongs = new ArrayList<>(songs);
+        if (newSongs.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> songPaths = new ArrayList<>();
+        List<String> coverPaths = new ArrayList<>();
+        for (Song song : newSongs) {
+            songPaths.add(song.getPath());
+            if (!song.getCoverPath().isEmpty()) {
+                coverPaths.add(song.getCoverPath());
+            }
+        }
+
+        AtomicInteger filesCopied = new AtomicInteger();
+        CopiedFiles copiedSongs = LocalFileHandler.createLocalFiles(songPaths, FileType.SONG,
+                () -> progress.accept((double) filesCopied.incrementAndGet() / (songPaths.size() + 1)));
+        CopiedFiles copiedCovers = null;
+
+        try {
+            copiedCovers = LocalFileHandler.createLocalFiles(coverPaths, FileType.IMAGE, null);
+            Map<String, Path> localSongPaths = copiedSongs.getLocalPaths();
+            Map<String, Path> localCoverPaths = copiedCovers.getLocalPaths();
+
+            List<Song> localSongs = new ArrayList<>(newSongs.size());
+            for (Song song : newSongs) {
+                Path coverPath = localCoverPaths.get(song.getCoverPath());
+                localSongs.add(new Song(song.getTitle(), song.getArtist(), song.getGenre(), song.getTime(),
+                        String.valueOf(localSongPaths.get(song.getPath())), 0, coverPath != null ? String.valueOf(coverPath) : ""));
+            }
+
+            List<Song> createdSongs = LocalStore.open(directory).createSongs(localSongs);
+            progress.accept(1);
+            return createdSongs;
+        }
+        catch (Exception e) {
+            // The songs weren't stored, so the copies of their files would never be used.
+            copiedSongs.deleteNewFiles();
+            if (copiedCovers != null) {
+                copiedCovers.deleteNewFiles();
+            }
+            throw e;
+        }
+    }
+}
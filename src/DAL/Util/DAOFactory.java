@@ -0,0 +1,40 @@
+package DAL.Util;
+
+import DAL.DB.PlayListDAO_DB;
+import DAL.DB.SongDao_DB;
+import DAL.Interfaces.IPlaylistDAO;
+import DAL.Interfaces.ISongDAO;
+import DAL.Local.PlayListDAO_Local;
+import DAL.Local.SongDao_Local;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Creates the DAOs for the storage chosen at startup.
+ * The storage is chosen with the system property mytunes.storage:
+ * "db" (the default) uses the database, "local" uses files in the folder given by mytunes.storage.dir,
+ * which is data/local if it isn't set. E.g. -Dmytunes.storage=local
+ */
+public class DAOFactory {
+    public static final String STORAGE_PROPERTY = "mytunes.storage";
+    public static final String STORAGE_DIR_PROPERTY = "mytunes.storage.dir";
+
+    private static final String DEFAULT_STORAGE_DIR = "data/local";
+
+    public static ISongDAO createSongDAO() {
+        return useLocalStorage() ? new SongDao_Local(localStorageDir()) : new SongDao_DB();
+    }
+
+    public static IPlaylistDAO createPlaylistDAO() {
+        return useLocalStorage() ? new PlayListDAO_Local(localStorageDir()) : new PlayListDAO_DB();
+    }
+
+    private static boolean useLocalStorage() {
+        return "local".equalsIgnoreCase(System.getProperty(STORAGE_PROPERTY, "db"));
+    }
+
+    private static Path localStorageDir() {
+        return Paths.get(System.getProperty(STORAGE_DIR_PROPERTY, DEFAULT_STORAGE_DIR));
+    }
+}
@@ -3,13 +3,61 @@ package DAL.Util;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
-import static java.nio.file.StandardCopyOption.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class LocalFileHandler {
+    // Copying is bound by the disk, so more threads than this don't make it faster.
+    private static final int COPY_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    // The number of names tried for a file before giving up, when files with other content have the names.
+    private static final int MAX_NAME_ATTEMPTS = 100;
+
+    /**
+     * The files copied by createLocalFiles, so the copies can be deleted again if the songs aren't stored.
+     */
+    public static class CopiedFiles {
+        private final Map<String, Path> localPaths = new HashMap<>();
+        private final Set<Path> newFiles = ConcurrentHashMap.newKeySet();
+
+        /**
+         * @return The new path of each file, by its original path.
+         */
+        public Map<String, Path> getLocalPaths() {
+            return localPaths;
+        }
+
+        /**
+         * Deletes the files that were created by the copy. Files that were already in the data package are kept,
+         * as songs in the library may point to them. A file that can't be deleted is logged and left behind.
+         */
+        public void deleteNewFiles() {
+            for (Path file : newFiles) {
+                try {
+                    Files.deleteIfExists(file);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            newFiles.clear();
+        }
+    }
+
     /**
      * Attempts to delete a local file from path.
      * @param path The path of the file to delete.
@@ -34,10 +82,18 @@ public class LocalFileHandler {
      * @throws Exception If it fails to create the local file.
      */
     public static Path createLocalFile(String path, FileType fileType) throws Exception {
-        try {
-            File localFilePath = new File(path);
-            String fileName = localFilePath.getName();
+        return createLocalFile(path, fileType, new File(path).getName(), null);
+    }
 
+    /**
+     * Helper method to createLocalFile, copying the file into the data package under the given name.
+     * A file already in the data package is never copied over, as a song in the library may point to it.
+     * If the name is taken by a file with the same content, e.g. the same track imported again, that file is used.
+     * Otherwise the file is copied under the name prefixed with a hash of its original path and a number.
+     * @param newFiles Receives the path of the copy if a new file was created. May be null.
+     */
+    private static Path createLocalFile(String path, FileType fileType, String fileName, Set<Path> newFiles) throws Exception {
+        try {
             String relativeFilePath = "data//";
 
             if (fileType == FileType.SONG) relativeFilePath += "songs//";
@@ -45,15 +101,119 @@ public class LocalFileHandler {
             if (fileType == FileType.IMAGE) relativeFilePath += "images//";
 
             Path originalFile = Paths.get(path);
-            File file = new File(relativeFilePath+=fileName);
-            Path finalFile = Paths.get(file.getPath());
-            Files.copy(originalFile, finalFile, REPLACE_EXISTING);
-            return finalFile;
-
+            for (int attempt = 0; attempt < MAX_NAME_ATTEMPTS; attempt++) {
+                String name = attempt == 0 ? fileName : String.format("%08x-%d-%s",
+                        originalFile.toAbsolutePath().toString().hashCode(), attempt, originalFile.getFileName());
+                Path finalFile = Paths.get(new File(relativeFilePath + name).getPath());
+                // A file that is already in the data package, e.g. the cover of a song being edited, isn't copied.
+                if (Files.exists(finalFile) && Files.isSameFile(originalFile, finalFile)) {
+                    return finalFile;
+                }
+                try {
+                    // Fails if the file exists, also when another thread creates it at the same time.
+                    Files.copy(originalFile, finalFile);
+                    if (newFiles != null) {
+                        newFiles.add(finalFile);
+                    }
+                    return finalFile;
+                }
+                catch (FileAlreadyExistsException e) {
+                    if (Files.mismatch(originalFile, finalFile) == -1) {
+                        return finalFile;
+                    }
+                }
+            }
+            throw new IOException("No free name for " + path + " in " + relativeFilePath);
         }
         catch (Exception e) {
             e.printStackTrace();
             throw new Exception("Failed to create song", e);
         }
     }
+
+    /**
+     * Copies several files into the data package in parallel, on a bounded number of threads.
+     * Each distinct path is only copied once, so tracks sharing an album cover don't copy it over each other.
+     * Files are copied under their own name, except when files from different folders share a name:
+     * those are prefixed with a hash of their original path, so every file gets a target of its own.
+     * A name that is already taken in the data package is handled like in createLocalFile,
+     * so no file a song already points to is copied over.
+     * @param paths The paths of the files to copy.
+     * @param fileType The type of the files.
+     * @param onFileCopied Called after each file has been copied, from the copying thread. May be null.
+     * @return The new path of each file, and the files that were created.
+     * @throws Exception If it fails to copy any of the files, or two files would still get the same name.
+     * The files copied before the failure are deleted again in that case.
+     */
+    public static CopiedFiles createLocalFiles(Collection<String> paths, FileType fileType, Runnable onFileCopied) throws Exception {
+        List<String> distinctPaths = new ArrayList<>(new LinkedHashSet<>(paths));
+        CopiedFiles copiedFiles = new CopiedFiles();
+
+        if (distinctPaths.isEmpty()) {
+            return copiedFiles;
+        }
+
+        Map<String, String> targetNames = targetNames(distinctPaths);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(COPY_THREADS, distinctPaths.size()));
+        try {
+            List<Future<Path>> copies = new ArrayList<>();
+            for (String path : distinctPaths) {
+                String targetName = targetNames.get(path);
+                copies.add(executor.submit(() -> {
+                    Path localPath = createLocalFile(path, fileType, targetName, copiedFiles.newFiles);
+                    if (onFileCopied != null) {
+                        onFileCopied.run();
+                    }
+                    return localPath;
+                }));
+            }
+
+            for (int i = 0; i < distinctPaths.size(); i++) {
+                copiedFiles.localPaths.put(distinctPaths.get(i), copies.get(i).get());
+            }
+            return copiedFiles;
+        }
+        catch (ExecutionException e) {
+            // Waits for the copies that are still running, so none of them are left behind.
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            copiedFiles.deleteNewFiles();
+            throw new Exception("Failed to copy files", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Helper method to createLocalFiles, choosing the name each file is copied under.
+     * @param distinctPaths The paths of the files, without duplicates.
+     * @return The name of each file in the data package, by its original path.
+     * @throws Exception If two files would get the same name.
+     */
+    private static Map<String, String> targetNames(List<String> distinctPaths) throws Exception {
+        Map<String, Integer> nameCounts = new HashMap<>();
+        for (String path : distinctPaths) {
+            nameCounts.merge(new File(path).getName(), 1, Integer::sum);
+        }
+
+        Map<String, String> targetNames = new HashMap<>();
+        Map<String, String> pathsByTarget = new HashMap<>();
+        for (String path : distinctPaths) {
+            File file = new File(path);
+            String targetName = file.getName();
+            // Files from different folders with the same name would be copied over each other.
+            if (nameCounts.get(targetName) > 1) {
+                targetName = String.format("%08x-%s", file.getAbsolutePath().hashCode(), targetName);
+            }
+
+            String otherPath = pathsByTarget.putIfAbsent(targetName, path);
+            if (otherPath != null) {
+                throw new Exception("Failed to copy files, " + path + " and " + otherPath + " would get the same name");
+            }
+            targetNames.put(path, targetName);
+        }
+        return targetNames;
+    }
 }
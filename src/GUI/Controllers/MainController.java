@@ -13,21 +13,27 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
+import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.Dragboard;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.TransferMode;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -39,7 +45,7 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.List;
 import java.util.ResourceBundle;
 
 public class MainController implements Initializable {
@@ -63,6 +69,8 @@ public class MainController implements Initializable {
     @FXML
     private Label labelPlayerTitle, labelPlayerArtist, labelPlayerDuration, labelCurrentSongDuration;
     @FXML
+    private Label labelSongs;
+    @FXML
     private TextField txtSongSearch;
     @FXML
     private TableView<Song> lstSongs;
@@ -97,6 +105,9 @@ public class MainController implements Initializable {
     @FXML
     private ListView<Song> tbvSongsInPlayList;
 
+    //Suggestions shown below the search field
+    private final ContextMenu searchSuggestions = new ContextMenu();
+
     //Models
     private SongModel songModel;
     private PlayListModel playlistModel;
@@ -118,6 +129,7 @@ public class MainController implements Initializable {
         //Initialize tables & volume slider
         initializeSongTbv();
         initializePlaylistTbv();
+        initializeSongsInPlaylistDragAndDrop();
         initializeVolumeSlider();
         initializeStyleSheets();
 
@@ -292,6 +304,7 @@ public class MainController implements Initializable {
     /**
      * Adds a listener to the text field for song searching.
      * If it is empty, then it disables the clear button for searching.
+     * The songs are searched as the user types, and the list is labelled when it only has close matches.
      */
     private void addSongSearchListener() {
         txtSongSearch.textProperty().addListener((observableValue, oldValue, newValue) -> {
@@ -300,7 +313,50 @@ public class MainController implements Initializable {
             } else {
                 setSearchButtons(true);
             }
+            handleSearch();
+            showSearchSuggestions(newValue);
         });
+
+        //Songs found despite a typo are labelled, so they aren't mistaken for exact matches.
+        songModel.showingCloseMatchesProperty().addListener((observable, oldValue, closeMatches) ->
+                labelSongs.setText(closeMatches ? "Close matches" : "Songs"));
+    }
+
+    /**
+     * Shows the titles, artists and genres starting with the search text below the search field.
+     * Choosing one replaces the search text with it.
+     * The suggestions are found in the background, and are not shown if the text has changed in the meantime.
+     * @param text, the text in the search field
+     */
+    private void showSearchSuggestions(String text) {
+        songModel.suggest(text).thenAccept(suggestions -> {
+            //A newer text is already being suggested for.
+            if (!text.equals(txtSongSearch.getText())) {
+                return;
+            }
+
+            //No need to suggest what has already been typed.
+            suggestions.removeIf(suggestion -> suggestion.equalsIgnoreCase(text.trim()));
+            if (suggestions.isEmpty() || !txtSongSearch.isFocused()) {
+                searchSuggestions.hide();
+                return;
+            }
+
+            List<MenuItem> items = new ArrayList<>();
+            for (String suggestion : suggestions) {
+                MenuItem item = new MenuItem(suggestion);
+                item.setOnAction(event -> {
+                    txtSongSearch.setText(suggestion);
+                    txtSongSearch.positionCaret(suggestion.length());
+                });
+                items.add(item);
+            }
+            searchSuggestions.getItems().setAll(items);
+
+            if (!searchSuggestions.isShowing()) {
+                searchSuggestions.show(txtSongSearch, Side.BOTTOM, 0, 0);
+            }
+        }).exceptionally(ErrorDisplayer::displayErrorLater);
     }
 
     /**
@@ -308,6 +364,7 @@ public class MainController implements Initializable {
      */
     private void initializeSongTbv() {
         lstSongs.setItems(songModel.getObservableSongs());
+        lstSongs.setContextMenu(createUpNextMenu());
 
         titleColum.setCellValueFactory(new PropertyValueFactory<>("Title"));
         artistColum.setCellValueFactory(new PropertyValueFactory<>("Artist"));
@@ -316,6 +373,27 @@ public class MainController implements Initializable {
         timeColum.setCellFactory(new TimeCellFactory<>());
     }
 
+    /**
+     * Creates the menu for queueing the selected song in the Up Next queue.
+     */
+    private ContextMenu createUpNextMenu() {
+        MenuItem playNext = new MenuItem("Play next");
+        playNext.setOnAction(event -> {
+            Song song = lstSongs.getSelectionModel().getSelectedItem();
+            if (song != null) {
+                mediaModel.playNext(song);
+            }
+        });
+        MenuItem addToUpNext = new MenuItem("Add to Up Next");
+        addToUpNext.setOnAction(event -> {
+            Song song = lstSongs.getSelectionModel().getSelectedItem();
+            if (song != null) {
+                mediaModel.addToUpNext(song);
+            }
+        });
+        return new ContextMenu(playNext, addToUpNext);
+    }
+
     /**
      * sets the Cell value for the 3 cells in tableView for PlayList.
      * Its uses the name of the variable in the PlayList object from BE.
@@ -329,17 +407,75 @@ public class MainController implements Initializable {
         clmPlayListTime.setCellFactory(new TimeCellFactory<>());
     }
 
+    /**
+     * Lets the user reorder the songs on a playlist by dragging a song to a new position.
+     */
+    private void initializeSongsInPlaylistDragAndDrop() {
+        tbvSongsInPlayList.setCellFactory(listView -> {
+            ListCell<Song> cell = new ListCell<>() {
+                @Override
+                protected void updateItem(Song song, boolean empty) {
+                    super.updateItem(song, empty);
+                    setText(empty || song == null ? null : song.toString());
+                }
+            };
+
+            //Keeps the window from moving while a song is dragged.
+            cell.setOnMouseDragged(Event::consume);
+
+            cell.setOnDragDetected(event -> {
+                if (!cell.isEmpty()) {
+                    Dragboard dragboard = cell.startDragAndDrop(TransferMode.MOVE);
+                    ClipboardContent content = new ClipboardContent();
+                    content.putString(String.valueOf(cell.getIndex()));
+                    dragboard.setContent(content);
+                }
+                event.consume();
+            });
+
+            cell.setOnDragOver(event -> {
+                //Only accepts songs dragged from this list.
+                if (event.getGestureSource() instanceof ListCell && event.getGestureSource() != cell) {
+                    event.acceptTransferModes(TransferMode.MOVE);
+                }
+                event.consume();
+            });
+
+            cell.setOnDragDropped(event -> {
+                boolean success = false;
+                Dragboard dragboard = event.getDragboard();
+
+                if (dragboard.hasString()) {
+                    int fromIndex = Integer.parseInt(dragboard.getString());
+                    //Dropping a song below the last song moves it to the bottom.
+                    int toIndex = cell.isEmpty() ? listView.getItems().size() - 1 : cell.getIndex();
+
+                    playlistModel.moveTo(fromIndex, toIndex)
+                            .thenRun(() -> listView.getSelectionModel().select(toIndex))
+                            .exceptionally(ErrorDisplayer::displayErrorLater);
+                    success = true;
+                }
+                event.setDropCompleted(success);
+                event.consume();
+            });
+
+            return cell;
+        });
+    }
+
     /**
      * Add a listener to songs in playlists.
      */
     private void songInPlaylistListener(){
-        tbvSongsInPlayList.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<Song>() {
+        //Listens to the index, as a playlist can have the same song more than once.
+        tbvSongsInPlayList.getSelectionModel().selectedIndexProperty().addListener(new ChangeListener<Number>() {
             @Override
-            public void changed(ObservableValue<? extends Song> observable, Song oldValue, Song newValue) {
+            public void changed(ObservableValue<? extends Number> observable, Number oldIndex, Number newIndex) {
+                Song newValue = tbvSongsInPlayList.getSelectionModel().getSelectedItem();
                 if (newValue != null) {
                     setSongsOnPlaylistManipulatingButtons(false);
                     lstSongs.getSelectionModel().clearSelection();
-                    PlayListModel.setSelectedSOP(newValue);
+                    PlayListModel.setSelectedSOP(newValue, newIndex.intValue());
                     mediaModel.setIsPlaylistSelected(true);
                 }
                 if (newValue == null) {
@@ -358,8 +494,19 @@ public class MainController implements Initializable {
     public void handlePlayerPrevious() {
         //checks if the player is over 5 seconds into the song.
         if(mediaModel.getCurrentTime().lessThan(Duration.millis(5000))) {
+            //in shuffle mode the song played before this one is played again, if there is one.
+            if (mediaModel.isShuffleBtnSelected()) {
+                Song song = mediaModel.getPreviousShuffledSong(getShownSongs());
+                if (song != null) {
+                    mediaModel.playMedia(song);
+                    getShownSelection().select(song);
+                }
+                else {
+                    mediaModel.restartSong();
+                }
+            }
             //checks if there is a playlist selected,
-            if (mediaModel.getIsPlaylistSelected()){
+            else if (mediaModel.getIsPlaylistSelected()){
                 //if the top row is selected it will jump to the bottom.
                 if(tbvSongsInPlayList.getSelectionModel().getSelectedIndex() == 0){
                     tbvSongsInPlayList.getSelectionModel().selectLast();
@@ -393,7 +540,11 @@ public class MainController implements Initializable {
      * jumps to the top if there is no more rows on the table
      */
     public void handlePlayerNext() {
-        if (mediaModel.isShuffleBtnSelected()) {
+        //songs queued with Play next or Add to Up Next are played first.
+        if (mediaModel.hasUpNext()) {
+            mediaModel.playMedia(mediaModel.pollUpNext());
+        }
+        else if (mediaModel.isShuffleBtnSelected()) {
             shuffleSongs();
         }
         else if (mediaModel.getIsPlaylistSelected()){
@@ -486,6 +637,10 @@ public class MainController implements Initializable {
             if (mediaModel.isRepeatBtnSelected()){
                 mediaModel.restartSong();
             }
+            //songs queued by the user are played before the selected table continues.
+            else if (mediaModel.hasUpNext()) {
+                handlePlayerNext();
+            }
             //if shuffle mode is selected a random son will play from the selected table.
             else if (mediaModel.isShuffleBtnSelected()) {
                 shuffleSongs();
@@ -537,18 +692,28 @@ public class MainController implements Initializable {
         return time;
     }
 
+    /**
+     * Plays the next song of the shuffle over the selected table.
+     * No song is repeated until every song in the table has been played.
+     */
     private void shuffleSongs() {
-        Random random = new Random();
-
-        if(mediaModel.getIsPlaylistSelected()){
-            int x = random.nextInt(tbvSongsInPlayList.getItems().size());
-            mediaModel.playMedia(tbvSongsInPlayList.getItems().get(x));
-            tbvSongsInPlayList.getSelectionModel().select(x);
-        }else{
-            int x = random.nextInt(lstSongs.getItems().size());
-            mediaModel.playMedia(lstSongs.getItems().get(x));
-            lstSongs.getSelectionModel().select(x);
+        Song song = mediaModel.getNextShuffledSong(getShownSongs());
+        if (song == null) {
+            return;
         }
+        mediaModel.playMedia(song);
+        getShownSelection().select(song);
+    }
+
+    /**
+     * @return the songs of the playlist if a playlist is selected, otherwise the songs of the song table.
+     */
+    private ObservableList<Song> getShownSongs() {
+        return mediaModel.getIsPlaylistSelected() ? tbvSongsInPlayList.getItems() : lstSongs.getItems();
+    }
+
+    private MultipleSelectionModel<Song> getShownSelection() {
+        return mediaModel.getIsPlaylistSelected() ? tbvSongsInPlayList.getSelectionModel() : lstSongs.getSelectionModel();
     }
 
 
@@ -556,11 +721,7 @@ public class MainController implements Initializable {
      * Search for a song in the list.
      */
     public void handleSearch() {
-        try {
-            songModel.search(txtSongSearch.getText());
-        } catch (Exception e) {
-            ErrorDisplayer.displayError(e);
-        }
+        songModel.search(txtSongSearch.getText()).exceptionally(ErrorDisplayer::displayErrorLater);
     }
 
     /**
@@ -652,18 +813,15 @@ public class MainController implements Initializable {
      * Add a new song from the library to the Songs on Playlist editor
      */
     public void handleSOPAdd() {
-        try {
-            if (PlayListModel.getSelectedPlaylist() != null) {
-                playlistModel.addSongToPlayList();
-            }
-            //if no playlist have been selected, then asks the user to create one.
-            else {
-                newPlaylistWithSOP();
-            }
-            //updates the song amount
-            tbvPlayLists.refresh();
-        } catch (Exception e) {
-            ErrorDisplayer.displayError(e);
+        if (PlayListModel.getSelectedPlaylist() != null) {
+            playlistModel.addSongToPlayList()
+                    //updates the song amount
+                    .thenRun(() -> tbvPlayLists.refresh())
+                    .exceptionally(ErrorDisplayer::displayErrorLater);
+        }
+        //if no playlist have been selected, then asks the user to create one.
+        else {
+            newPlaylistWithSOP();
         }
     }
 
@@ -683,24 +841,24 @@ public class MainController implements Initializable {
      * Move the song up in the order of Songs on Playlist
      */
     public void handleSOPMoveUp() {
-        try {
-            playlistModel.moveSOP(true);
-            tbvSongsInPlayList.refresh();
-        } catch (Exception e) {
-            ErrorDisplayer.displayError(e);
-        }
+        playlistModel.moveSOP(true)
+                .thenAccept(newIndex -> {
+                    tbvSongsInPlayList.getSelectionModel().select(newIndex);
+                    tbvSongsInPlayList.refresh();
+                })
+                .exceptionally(ErrorDisplayer::displayErrorLater);
     }
 
     /**
      * Move the song down in the order of Songs on Playlist
      */
     public void handleSOPMoveDown() {
-        try {
-            playlistModel.moveSOP(false);
-            tbvSongsInPlayList.refresh();
-        } catch (Exception e) {
-            ErrorDisplayer.displayError(e);
-        }
+        playlistModel.moveSOP(false)
+                .thenAccept(newIndex -> {
+                    tbvSongsInPlayList.getSelectionModel().select(newIndex);
+                    tbvSongsInPlayList.refresh();
+                })
+                .exceptionally(ErrorDisplayer::displayErrorLater);
     }
 
     /**
@@ -708,14 +866,20 @@ public class MainController implements Initializable {
      */
     public void handleSOPDelete() {
         try {
+            Song selectedSOP = PlayListModel.getSelectedSOP();
+            //nothing is removed if no song on the playlist is selected.
+            if (selectedSOP == null) {
+                return;
+            }
             String header = "Are you sure you want to remove this song?";
-            String content = PlayListModel.getSelectedSOP().getTitle();
+            String content = selectedSOP.getTitle();
             boolean deleteSOP = ConfirmDelete.confirm(header, content);
             if (deleteSOP){
                 //Deletes in the DAL
-                playlistModel.deleteSOP();
-                //Updates the GUI.
-                tbvPlayLists.refresh();
+                playlistModel.deleteSOP()
+                        //Updates the GUI.
+                        .thenRun(() -> tbvPlayLists.refresh())
+                        .exceptionally(ErrorDisplayer::displayErrorLater);
             }
         } catch (Exception e) {
             ErrorDisplayer.displayError(e);
@@ -816,6 +980,7 @@ public class MainController implements Initializable {
      */
     public void handleEnter(KeyEvent keyEvent) {
         if (keyEvent.getCode().equals(KeyCode.ENTER)) {
+            searchSuggestions.hide();
             handleSearch();
         }
     }
@@ -842,6 +1007,7 @@ public class MainController implements Initializable {
             mediaModel.setRepeatBtnSelected(true);
 
             mediaModel.setShuffleBtnSelected(false);
+            setWeightedShuffle(false);
             btnShuffleAtEnd.setSelected(false);
         }
     }
@@ -849,12 +1015,18 @@ public class MainController implements Initializable {
     /**
      * sets the boolean in mediaModel isShuffleSelected to true if the button is clicked.
      * changes the color of the button to green if selected, and changes the repeatAtEnd button to blue if selected
-     * changes back to blue if pushed again, while sets boolean isShuffleSelected false
+     * pushing it again switches to weighted shuffle (★), where the most played songs come up more often,
+     * and pushing it a third time changes back to blue, while sets boolean isShuffleSelected false
      * @param actionEvent
      */
     public void handleShuffleAtEnd(ActionEvent actionEvent) {
-        if(mediaModel.isShuffleBtnSelected()){
+        if(mediaModel.isShuffleBtnSelected() && !mediaModel.isWeightedShuffle()){
+            //the button stays selected, now as weighted shuffle.
+            setWeightedShuffle(true);
+            btnShuffleAtEnd.setSelected(true);
+        }else if(mediaModel.isShuffleBtnSelected()){
             mediaModel.setShuffleBtnSelected(false);
+            setWeightedShuffle(false);
         }else {
             mediaModel.setShuffleBtnSelected(true);
             mediaModel.setRepeatBtnSelected(false);
@@ -862,6 +1034,11 @@ public class MainController implements Initializable {
         }
     }
 
+    private void setWeightedShuffle(boolean weightedShuffle) {
+        mediaModel.setWeightedShuffle(weightedShuffle);
+        btnShuffleAtEnd.setText(weightedShuffle ? "★" : "🔀");
+    }
+
     /**
      * checks if any song has been double-clicked, then start playing it
      * @param mouseEvent
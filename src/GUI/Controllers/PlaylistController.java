@@ -25,6 +25,8 @@ public class PlaylistController implements Initializable {
     @FXML
     private TextField textName;
     @FXML
+    private TextField textRule;
+    @FXML
     private Button btnOK;
     @FXML
     private Button btnCancel;
@@ -50,12 +52,16 @@ public class PlaylistController implements Initializable {
         if (PlayListModel.getSelectedPlaylist() != null) {
             playList = PlayListModel.getSelectedPlaylist();
             textName.setText(playList.getTitle());
+            textRule.setText(playList.getSmartRule() != null ? playList.getSmartRule() : "");
         }
 
         //Disable the OK button until there is new input in the text field.
         btnOK.setDisable(true);
         //Adding a listener, and enabling/disabling the OK button if name is empty
         textNameListener();
+        //A changed rule can be saved as long as there is a name.
+        textRule.textProperty().addListener((observableValue, oldValue, newValue) ->
+                btnOK.setDisable(textName.getText().trim().isEmpty()));
 
         addMoveWindowListener();
     }
@@ -100,17 +106,22 @@ public class PlaylistController implements Initializable {
             //we edit the selected playlist.
             if (!createNewPlayList){
 
-                //set the new title
-                playList.setTitle(playlistName);
-               //updates title in the db
+                //set the new title and rule, the title is only read from the listener when it has changed.
+                playList.setTitle(textName.getText());
+                playList.setSmartRule(textRule.getText().trim());
+               //updates title and rule in the db
                 playListModel.updatePlayList(playList);
             }
             //we create a new playlist.
             else {
                 //we create a new playlist object.
                 PlayList p = new PlayList(playlistName);
-                //we insert our new playlist into the db.
-                playListModel.createPlayList(p, addSong);
+                p.setSmartRule(textRule.getText().trim());
+                //we insert our new playlist into the db, the song is added in the background.
+                //a smart playlist gets its songs from its rule instead.
+                playListModel.createPlayList(p, addSong && !p.isSmart())
+                        .thenRun(() -> tbvPlayLists.refresh())
+                        .exceptionally(ErrorDisplayer::displayErrorLater);
 
                 //we set focus on the new playlist
                 tbvPlayLists.getSelectionModel().selectLast();
@@ -145,7 +156,9 @@ public class PlaylistController implements Initializable {
             ErrorDisplayer.displayError(new Exception("Name can not be empty"));
             return true;
         }
-        if (!createNewPlayList && textName.getText().trim().matches(playList.getTitle())) {
+        String oldRule = playList != null && playList.getSmartRule() != null ? playList.getSmartRule() : "";
+        if (!createNewPlayList && textName.getText().trim().equals(playList.getTitle())
+                && textRule.getText().trim().equals(oldRule)) {
             ErrorDisplayer.displayError(new Exception("No changes were made"));
             return true;
         }
@@ -100,7 +100,7 @@ public class SongCreateController implements Initializable {
 
         try {
             songModel.createSong(song); //Send the song down the layers to create it in the Database.
-            songModel.search(""); //Refreshes the list shown to the user by simply searching an empty string.
+            songModel.search("").exceptionally(ErrorDisplayer::displayErrorLater); //Refreshes the list shown to the user by simply searching an empty string.
         } catch (Exception e) {
             ErrorDisplayer.displayError(e);
         }
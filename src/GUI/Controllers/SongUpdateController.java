@@ -173,20 +173,17 @@ public class SongUpdateController implements Initializable {
             return;
         }
 
-        //Set the title, artist, and genre to new input
-        song.setTitle(textTitle.getText());
-        song.setArtist(textArtist.getText());
-        song.setGenre(textGenre.getText());
-
+        //A new song with the new input, as the old Song object is shared with the library and the playlists.
+        String coverPath = song.getCoverPath();
         if(isImageEdited) {
-            String coverPath = albumCover != null ? albumCover.getAbsolutePath() : "";
-            song.setCoverPath(coverPath);
+            coverPath = albumCover != null ? albumCover.getAbsolutePath() : "";
         }
-
+        Song updatedSong = new Song(textTitle.getText(), textArtist.getText(), textGenre.getText(),
+                song.getTime(), song.getPath(), song.getId(), coverPath);
 
         try {
-            songModel.updateSong(song); //Send the song down the layers to update it in the Database.
-            songModel.search(""); //Refreshes the list shown to the user by simply searching an empty string.
+            songModel.updateSong(updatedSong); //Send the song down the layers to update it in the Database.
+            songModel.search("").exceptionally(ErrorDisplayer::displayErrorLater); //Refreshes the list shown to the user by simply searching an empty string.
         } catch (Exception e) {
             ErrorDisplayer.displayError(e);
         }
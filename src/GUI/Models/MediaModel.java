@@ -1,10 +1,17 @@
 package GUI.Models;
 
+import BE.PlayQueue;
 import BE.Song;
+import BLL.Util.ShuffleEngine;
+import BLL.Util.WeightedShuffle;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 public class MediaModel {
     private MediaPlayer mediaPlayer;
@@ -13,8 +20,30 @@ public class MediaModel {
     private boolean isMute;
     private boolean repeatBtnSelected;
     private boolean shuffleBtnSelected;
+    private boolean weightedShuffle;
     private boolean isPlaying;
     private boolean isPlaylistSelected;
+    private final ShuffleEngine<Song> shuffleEngine = new ShuffleEngine<>();
+    //plays the songs that have been played the most more often, the weight of a song is 1 + its play count.
+    private final WeightedShuffle<Song> favouritesShuffle = new WeightedShuffle<>();
+    //how many times each song has been played since the program started, by song id.
+    private final Map<Integer, Integer> playCounts = new HashMap<>();
+    private ObservableList<Song> shuffledSongs;
+    //the songs the user has queued to play next, before the selected table continues.
+    private final PlayQueue<Song> upNext = new PlayQueue<>();
+    //keeps the shuffles up to date with the songs added to or removed from the shuffled table.
+    private final ListChangeListener<Song> shuffledSongsListener = change -> {
+        while (change.next()) {
+            for (Song song : change.getRemoved()) {
+                shuffleEngine.remove(song);
+                favouritesShuffle.remove(song);
+            }
+            for (Song song : change.getAddedSubList()) {
+                shuffleEngine.add(song);
+                favouritesShuffle.add(song);
+            }
+        }
+    };
 
     /**
      * creates a mediaPlayer when the model is set, multiple methods rely on a mediaPlayer for calls.
@@ -61,9 +90,86 @@ public class MediaModel {
             mediaPlayer = new MediaPlayer(createMedia(song));
            mediaPlayer.setVolume(getVolume());
             startMedia();
+            //counts the play, so the song is picked more often in the weighted shuffle.
+            playCounts.merge(song.getId(), 1, Integer::sum);
+            favouritesShuffle.updateWeight(song);
         }
 
        selectedSong = song;
+       //a song picked by the user counts as played in the shuffle.
+       if (shuffledSongs != null) {
+           shuffleEngine.setCurrent(song);
+       }
+    }
+
+    /**
+     * Queues a song to play after the current one, before the songs already queued.
+     * @param song The song to play next.
+     */
+    public void playNext(Song song) {
+        upNext.insert(0, song);
+    }
+
+    /**
+     * Queues a song to play after the songs already queued.
+     * @param song The song to queue.
+     */
+    public void addToUpNext(Song song) {
+        upNext.add(song);
+    }
+
+    /**
+     * Takes the first song from the Up Next queue.
+     * @return The song, or null if the queue is empty.
+     */
+    public Song pollUpNext() {
+        return upNext.isEmpty() ? null : upNext.remove(0);
+    }
+
+    public boolean hasUpNext() {
+        return !upNext.isEmpty();
+    }
+
+    /**
+     * Gives the next song to play in shuffle mode. No song is repeated until every song in the table has been played.
+     * In weighted shuffle the songs are picked at random instead, and the most played songs come up more often.
+     * @param songs The songs in the table that is shuffled. The shuffle starts over when it is another table.
+     * @return The next song, or null if the table is empty.
+     */
+    public Song getNextShuffledSong(ObservableList<Song> songs) {
+        setShuffledSongs(songs);
+        return weightedShuffle ? favouritesShuffle.next() : shuffleEngine.next();
+    }
+
+    /**
+     * Gives the song played before the current one in shuffle mode.
+     * @param songs The songs in the table that is shuffled.
+     * @return The previous song, or null if the current song is the first one played, or the shuffle is weighted.
+     */
+    public Song getPreviousShuffledSong(ObservableList<Song> songs) {
+        setShuffledSongs(songs);
+        return weightedShuffle ? null : shuffleEngine.previous();
+    }
+
+    /**
+     * Starts a new shuffle if the songs come from another table than before.
+     * The shuffle follows the changes to the table from then on, instead of being rebuilt.
+     */
+    private void setShuffledSongs(ObservableList<Song> songs) {
+        if (songs == shuffledSongs) {
+            return;
+        }
+        if (shuffledSongs != null) {
+            shuffledSongs.removeListener(shuffledSongsListener);
+        }
+        shuffledSongs = songs;
+        shuffleEngine.reset(songs);
+        favouritesShuffle.reset(songs, song -> 1 + playCounts.getOrDefault(song.getId(), 0));
+        songs.addListener(shuffledSongsListener);
+        //the song that is playing counts as played.
+        if (selectedSong != null) {
+            shuffleEngine.setCurrent(selectedSong);
+        }
     }
 
     private void pauseMedia() {
@@ -109,6 +215,14 @@ public class MediaModel {
         this.shuffleBtnSelected = shuffleBtnSelected;
     }
 
+    public boolean isWeightedShuffle() {
+        return weightedShuffle;
+    }
+
+    public void setWeightedShuffle(boolean weightedShuffle) {
+        this.weightedShuffle = weightedShuffle;
+    }
+
     public boolean isRepeatBtnSelected() {
         return repeatBtnSelected;
     }
@@ -1,19 +1,29 @@
 package GUI.Models;
 
 import BE.PlayList;
+import BE.PlayQueue;
 import BE.Song;
 import BLL.Interfaces.IPlayListManager;
 import BLL.Interfaces.ISongManager;
 import BLL.PlayListManager;
+import GUI.Util.ErrorDisplayer;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
 public class PlayListModel {
     private ObservableList<PlayList> playListsInList;
     private ObservableList<Song> songsInPlayList;
     private IPlayListManager playListManager;
     private static PlayList selectedPlaylist;
     private static Song selectedSOP;
+    //the place of the selected song in the playlist, which tells copies of the same song apart.
+    private static PlayQueue.Entry<Song> selectedSOPEntry;
+    private CompletableFuture<?> pendingChanges = CompletableFuture.completedFuture(null);
 
     public static PlayList getSelectedPlaylist() {
         return selectedPlaylist;
@@ -28,6 +38,19 @@ public class PlayListModel {
 
     public static void setSelectedSOP(Song selectedSOP) {
         PlayListModel.selectedSOP = selectedSOP;
+        PlayListModel.selectedSOPEntry = null;
+    }
+
+    /**
+     * Sets the selected song on the playlist, and remembers its place,
+     * so the right copy is moved or removed if the song is in the playlist more than once.
+     * @param selectedSOP the selected song.
+     * @param index the position of the song in the selected playlist.
+     */
+    public static void setSelectedSOP(Song selectedSOP, int index) {
+        PlayListModel.selectedSOP = selectedSOP;
+        boolean inPlaylist = selectedPlaylist != null && index >= 0 && index < selectedPlaylist.getSongAmount();
+        PlayListModel.selectedSOPEntry = inPlaylist ? selectedPlaylist.getEntry(index) : null;
     }
 
     /**
@@ -66,30 +89,59 @@ public class PlayListModel {
 
     /**
      * Adds the last selected song to the last selected PlayList.
-     * @throws Exception If it fails to add the song to the playlist.
+     * The database is updated in the background, and the GUI once it is done.
+     * @return a future that completes on the JavaFX thread when the song has been added.
      */
-    public void addSongToPlayList() throws Exception {
+    public CompletableFuture<Void> addSongToPlayList() {
         Song song = SongModel.getSelectedSong();
+        PlayList playList = selectedPlaylist;
         //if the user have selected a playlist, then adds a song to it.
-        if(selectedPlaylist != null){
-            playListManager.addSongToPlayList(selectedPlaylist, song);
+        if(playList == null){
+            return CompletableFuture.completedFuture(null);
+        }
 
-            //This will update the GUI.
-            songsInPlayList.add(song);
+        return enqueueChange(() -> playListManager.addSongToPlayListAsync(playList, song)
+                .thenRunAsync(() -> {
+                    //This will update the GUI, if the playlist is still shown.
+                    if (playList == selectedPlaylist) {
+                        songsInPlayList.add(song);
+                    }
 
-            //Updates the list in the effected PlayList object.
-            selectedPlaylist.addSongToPlaylist(song);
-        }
+                    //Updates the list in the effected PlayList object.
+                    playList.addSongToPlaylist(song);
+                }, Platform::runLater));
     }
 
-    public void deleteSOP() throws Exception {
-        //This will remove the song from the playlist in the database.
-        playListManager.removeSOP(selectedPlaylist, selectedSOP);
-        //Updates the list in the effected PlayList object.
-        selectedPlaylist.removeSOP(selectedSOP);
-        //this will remove the song from the GUI.
-        songsInPlayList.clear();
-        songsInPlayList.addAll(selectedPlaylist.getAllSongsInPlaylist());
+    /**
+     * Removes the selected song from the selected playlist.
+     * The database is updated in the background, and the GUI once it is done.
+     * @return a future that completes on the JavaFX thread when the song has been removed.
+     */
+    public CompletableFuture<Void> deleteSOP() {
+        PlayList playList = selectedPlaylist;
+        PlayQueue.Entry<Song> entry = selectedSOPEntry;
+        if (playList == null || entry == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return enqueueChange(() -> {
+            //The position is found once the earlier changes are done, as they may have moved the song.
+            int songIndex = playList.indexOf(entry);
+            if (songIndex == -1) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            //This will remove the song from the playlist in the database.
+            return reloadIfFailed(playList, playListManager.removeSOPAsync(playList, entry.getValue(), songIndex))
+                    .thenRunAsync(() -> {
+                        //Updates the list in the effected PlayList object.
+                        playList.removeSOP(entry);
+                        //this will remove the song from the GUI, if the playlist is still shown.
+                        if (playList == selectedPlaylist) {
+                            songsInPlayList.remove(songIndex);
+                        }
+                    }, Platform::runLater);
+        });
     }
 
     public void updatePlayList(PlayList playList) throws Exception {
@@ -103,7 +155,14 @@ public class PlayListModel {
         playListsInList.remove(selectedPlaylist);
     }
 
-    public void createPlayList(PlayList playList, boolean addSong) throws Exception {
+    /**
+     * Creates a new playlist, and adds the selected song to it if addSong is true.
+     * @param playList the new playlist.
+     * @param addSong if the selected song should be added to the new playlist.
+     * @return a future that completes on the JavaFX thread when the song has been added.
+     * @throws Exception if it fails to create the playlist.
+     */
+    public CompletableFuture<Void> createPlayList(PlayList playList, boolean addSong) throws Exception {
         //Inserts the new playlist into the db
         PlayList newPlaylist = playListManager.createPlayList(playList);
 
@@ -111,14 +170,121 @@ public class PlayListModel {
         playListsInList.add(newPlaylist);
         if (addSong){
             selectedPlaylist = newPlaylist;
-            addSongToPlayList();
+            return addSongToPlayList();
         }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Moves the selected song on the playlist one step up or down.
+     * @param moveUp the direction the song should be moved.
+     * @return a future with the new index of the song, completed on the JavaFX thread.
+     */
+    public CompletableFuture<Integer> moveSOP(Boolean moveUp) {
+        PlayList playList = selectedPlaylist;
+        PlayQueue.Entry<Song> entry = selectedSOPEntry;
+
+        return enqueueChange(() -> {
+            //The index is found once the earlier changes are done.
+            int songIndex = playList.indexOf(entry);
+            int newIndex = moveUp ? songIndex - 1 : songIndex + 1;
+
+            //the song is already at the top or bottom.
+            if (songIndex == -1 || newIndex < 0 || newIndex >= playList.getSongAmount()) {
+                return CompletableFuture.completedFuture(songIndex);
+            }
+            return moveSong(playList, songIndex, newIndex).thenApply(ignored -> newIndex);
+        });
+    }
+
+    /**
+     * Moves a song in the selected playlist from one position to another.
+     * @param fromIndex the current index of the song.
+     * @param toIndex the index the song should end up at.
+     * @return a future that completes on the JavaFX thread when the song has been moved.
+     */
+    public CompletableFuture<Void> moveTo(int fromIndex, int toIndex) {
+        PlayList playList = selectedPlaylist;
+        return enqueueChange(() -> {
+            //the song is dropped where it already is, or the playlist has changed since the drag started.
+            if (playList == null || fromIndex == toIndex || fromIndex >= playList.getSongAmount() || toIndex >= playList.getSongAmount()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return moveSong(playList, fromIndex, toIndex);
+        });
+    }
+
+    private CompletableFuture<Void> moveSong(PlayList playList, int fromIndex, int toIndex) {
+        //This will move the song in the database.
+        return reloadIfFailed(playList, playListManager.moveToAsync(playList, fromIndex, toIndex))
+                .thenRunAsync(() -> {
+                    //Updates the list in the effected PlayList object.
+                    playList.moveSong(fromIndex, toIndex);
+                    //this will move the song in the GUI, if the playlist is still shown.
+                    if (playList == selectedPlaylist) {
+                        Song song = songsInPlayList.remove(fromIndex);
+                        songsInPlayList.add(toIndex, song);
+                    }
+                }, Platform::runLater);
+    }
+
+    /**
+     * Reads the songs of a playlist again if a change to it fails, as the playlist may have been changed
+     * somewhere else, so the next change starts from the songs that are really in it.
+     * @param playList the changed playlist.
+     * @param change the running change.
+     * @return a future that fails like the change, once the reload has been queued.
+     */
+    private <T> CompletableFuture<T> reloadIfFailed(PlayList playList, CompletableFuture<T> change) {
+        return change.whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                reloadSongs(playList);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Replaces the songs of a playlist with the ones in the database, after the changes queued before it.
+     * @param playList the playlist to reload.
+     */
+    private void reloadSongs(PlayList playList) {
+        enqueueChange(() -> playListManager.getSongsInPlayListAsync(playList)
+                .thenAcceptAsync(songs -> {
+                    //Updates the list in the effected PlayList object.
+                    List<Song> songsInPlaylist = playList.getAllSongsInPlaylist();
+                    songsInPlaylist.clear();
+                    songsInPlaylist.addAll(songs);
+                    //This will update the GUI, if the playlist is still shown.
+                    if (playList == selectedPlaylist) {
+                        songsInPlayList.setAll(songs);
+                    }
+                }, Platform::runLater))
+                .exceptionally(ErrorDisplayer::displayErrorLater);
     }
 
-    public void moveSOP(Boolean moveUp) throws Exception{
-        playListManager.moveSOP(selectedPlaylist, selectedSOP, moveUp);
-        songsInPlayList.clear();
-        songsInPlayList.addAll(selectedPlaylist.getAllSongsInPlaylist());
+    /**
+     * Runs changes to playlists one after another, each started on the JavaFX thread
+     * once the previous one is done, so every change sees the result of the ones before it.
+     * A change that fails doesn't stop the ones after it.
+     * @param change Starts the change and returns a future that completes when it is done.
+     * @return a future that completes when the change is done.
+     */
+    private <T> CompletableFuture<T> enqueueChange(Supplier<CompletableFuture<T>> change) {
+        CompletableFuture<T> next = pendingChanges
+                .handle((result, error) -> null)
+                .thenComposeAsync(ignored -> change.get(), Platform::runLater);
+        pendingChanges = next;
+        return next;
+    }
+
+    /**
+     * Shows the songs of the selected playlist again if it is a smart playlist,
+     * as its songs follow the changes to the library.
+     */
+    public void refreshSmartPlaylist() {
+        if (selectedPlaylist != null && selectedPlaylist.isSmart()) {
+            songsInPlayList.setAll(selectedPlaylist.getAllSongsInPlaylist());
+        }
     }
 
     /**
@@ -130,25 +296,20 @@ public class PlayListModel {
         //CFS changesFromSongs
         //loops through all playlists.
         for(PlayList p: playListsInList){
-            //loops through all songs in the playlist, checking if the songId matches the song i parameter.
-            for (Song song1:p.getAllSongsInPlaylist()) {
-                if ((song1.getId() == song.getId()) && !deleteSong) {
-                    //replaces the old data with the new.
-                    song1.setArtist(song.getArtist());
-                    song1.setGenre(song.getGenre());
-                    song1.setTitle(song.getTitle());
-                    song1.setCoverPath(song.getCoverPath());
-                    break;
-                }
-                else if ((song1.getId() == song.getId()) && deleteSong) {
-                    //checks if the song is currently being shown to the user, then removes it from the list.
-                    if (songsInPlayList.contains(song1)){
-                        songsInPlayList.remove(song1);
-                    }
-                    p.removeSOP(song1);
-                    break;
-                }
+            if (deleteSong) {
+                //removes every copy of the song, as a playlist can have the same song more than once.
+                p.getAllSongsInPlaylist().removeIf(song1 -> song1.getId() == song.getId());
+                continue;
             }
+            //replaces every copy of the old Song object with the updated one.
+            p.getAllSongsInPlaylist().replaceAll(song1 -> song1.getId() == song.getId() ? song : song1);
+        }
+        //removes or replaces the song in the GUI, if it is in the playlist being shown to the user.
+        if (deleteSong) {
+            songsInPlayList.removeIf(song1 -> song1.getId() == song.getId());
+        }
+        else {
+            songsInPlayList.replaceAll(song1 -> song1.getId() == song.getId() ? song : song1);
         }
     }
 }
\ No newline at end of file
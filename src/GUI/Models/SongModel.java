@@ -3,25 +3,54 @@ package GUI.Models;
 import BE.Song;
 import BLL.Interfaces.ISongManager;
 import BLL.SongManager;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SongModel {
+    // The number of search results shown, the best first.
+    public static final int SEARCH_PAGE_SIZE = 200;
+    // The number of suggestions shown below the search field.
+    public static final int SUGGESTION_COUNT = 8;
+
     private ObservableList<Song> songsInList;
     private ISongManager songManager;
     private PlayListModel playListModel;
     private static Song selectedSong;
+    private CompletableFuture<List<Song>> runningSearch;
+    // True while the list shows the songs closest to a query that no song contains.
+    private final BooleanProperty showingCloseMatches = new SimpleBooleanProperty(false);
+    private CompletableFuture<List<String>> runningSuggestion;
 
     public ObservableList<Song> getObservableSongs() {
         return songsInList;
     }
+    public BooleanProperty showingCloseMatchesProperty() {
+        return showingCloseMatches;
+    }
     public static Song getSelectedSong() {
         return selectedSong;
     }
 
+    /**
+     * Sets the playlist model, whose smart playlist is shown again when its songs change.
+     * The songs of the smart playlists are only changed on the JavaFX thread, also when the library changes in the background.
+     * @param playListModel the playlist model.
+     */
     public void setPlayListModel(PlayListModel playListModel){
         this.playListModel = playListModel;
+        songManager.applySmartPlaylistChangesOn(change -> {
+            if (Platform.isFxApplicationThread()) {
+                change.run();
+            }
+            else {
+                Platform.runLater(change);
+            }
+        }, playListModel::refreshSmartPlaylist);
     }
 
     /**
@@ -36,14 +65,54 @@ public class SongModel {
     }
 
     /**
-     * Filter the list of songs in library using a search query
+     * Filter the list of songs in library using a search query.
+     * Only the first page of the best matches is shown, while an empty query shows the whole library.
+     * If no song contains the query, the songs closest to it are shown instead, and showingCloseMatches is set.
+     * The search runs in the background, and a search that is still running is cancelled.
      * @param query, a String to search for.
+     * @return a future that completes on the JavaFX thread when the list of songs has been updated.
+     */
+    public CompletableFuture<Void> search(String query) {
+        if (runningSearch != null) {
+            runningSearch.cancel(true);
+        }
+        CompletableFuture<List<Song>> search = query.isBlank()
+                ? songManager.searchAsync(query)
+                : songManager.searchRankedAsync(query, SEARCH_PAGE_SIZE);
+        runningSearch = search;
+
+        return search.thenComposeAsync(searchResults -> {
+            //Nothing contains the query, so it may be misspelled.
+            if (searchResults.isEmpty() && !query.isBlank() && runningSearch == search) {
+                runningSearch = songManager.searchFuzzyAsync(query, SEARCH_PAGE_SIZE);
+                return runningSearch.thenAcceptAsync(closeMatches -> showSearchResults(closeMatches, true), Platform::runLater);
+            }
+            showSearchResults(searchResults, false);
+            return CompletableFuture.completedFuture(null);
+        }, Platform::runLater);
+    }
+
+    /**
+     * Helper method to search, showing the found songs in the list.
+     */
+    private void showSearchResults(List<Song> searchResults, boolean closeMatches) {
+        songsInList.setAll(searchResults);
+        showingCloseMatches.set(closeMatches && !searchResults.isEmpty());
+    }
+
+    /**
+     * Suggests titles, artists and genres starting with what the user has typed.
+     * The suggestions are found in the background, and a suggestion that is still running is cancelled.
+     * @param prefix, the text in the search field.
+     * @return a future that completes on the JavaFX thread with the suggestions, the ones shared by the most songs first.
      */
-    public void search(String query) throws Exception {
-        List<Song> searchResults = songManager.search(query);
+    public CompletableFuture<List<String>> suggest(String prefix) {
+        if (runningSuggestion != null) {
+            runningSuggestion.cancel(true);
+        }
+        runningSuggestion = songManager.suggestAsync(prefix, SUGGESTION_COUNT);
 
-        songsInList.clear();
-        songsInList.addAll(searchResults);
+        return runningSuggestion.thenApplyAsync(suggestions -> suggestions, Platform::runLater);
     }
 
     /**
@@ -57,12 +126,14 @@ public class SongModel {
 
     /**
      * Update/Edit a song
-     * @param song, the selected song to update
+     * The stored song replaces the old Song object in the list and the playlists.
+     * @param song, a new Song object with the id of the song to update and the new values
      * @throws Exception If it fails to update the song.
      */
     public void updateSong(Song song) throws Exception {
-        songManager.updateSong(song);
-        playListModel.updateCFS(song, false);
+        Song storedSong = songManager.updateSong(song);
+        songsInList.replaceAll(song1 -> song1.getId() == storedSong.getId() ? storedSong : song1);
+        playListModel.updateCFS(storedSong, false);
     }
 
     /**
@@ -1,9 +1,13 @@
 package GUI.Util;
 
 import GUI.Controllers.MainController;
+import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.stage.StageStyle;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
 public class ErrorDisplayer {
     /**
      * Displays an error as a modal to the user.
@@ -18,4 +22,24 @@ public class ErrorDisplayer {
         alert.setHeaderText(throwable.getLocalizedMessage());
         alert.showAndWait();
     }
+
+    /**
+     * Displays the error of a failed background task on the JavaFX thread.
+     * Cancelled tasks are ignored, as they were cancelled on purpose.
+     * Fits CompletableFuture.exceptionally.
+     * @param throwable The error to display.
+     * @return null, so it can be used as the result of the failed future.
+     */
+    public static <T> T displayErrorLater(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (!(cause instanceof CancellationException)) {
+            Throwable error = cause;
+            Platform.runLater(() -> displayError(error));
+        }
+        return null;
+    }
 }